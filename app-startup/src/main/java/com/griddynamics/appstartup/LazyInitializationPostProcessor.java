@@ -0,0 +1,45 @@
+package com.griddynamics.appstartup;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+
+/**
+ * Makes every bean lazy if lazyInitialization is set under the prefix of the application, except the ones
+ * annotated with @Lazy(false). Spring Boot 2.1 has no spring.main.lazy-initialization yet.
+ * Must be declared by a static @Bean method, so it is created before the other beans.
+ */
+public class LazyInitializationPostProcessor implements BeanFactoryPostProcessor, EnvironmentAware {
+
+    private final String prefix;
+    private Environment environment;
+
+    public LazyInitializationPostProcessor(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        if (!Binder.get(environment).bind(prefix + ".lazy-initialization", Boolean.class).orElse(false)) {
+            return;
+        }
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            boolean annotatedLazy = definition instanceof AnnotatedBeanDefinition
+                    && ((AnnotatedBeanDefinition) definition).getMetadata().hasAnnotation(Lazy.class.getName());
+            if (!annotatedLazy) {
+                definition.setLazyInit(true);
+            }
+        }
+    }
+}
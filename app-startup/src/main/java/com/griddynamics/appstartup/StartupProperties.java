@@ -0,0 +1,16 @@
+package com.griddynamics.appstartup;
+
+import lombok.Data;
+
+/**
+ * Startup options, bound by each application under its own properties prefix.
+ */
+@Data
+public class StartupProperties {
+    // Beans are created when they are first used instead of at startup, except the ones annotated with @Lazy(false)
+    private boolean lazyInitialization = false;
+    // JSON report with the startup time is written to this file once the application has started, blank disables it
+    private String reportFile = "startup-report.json";
+    // Exit as soon as the application has started, used to record the classes for the class data sharing archive
+    private boolean exitAfterStartup = false;
+}
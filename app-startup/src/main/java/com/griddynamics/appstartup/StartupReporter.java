@@ -0,0 +1,64 @@
+package com.griddynamics.appstartup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Reports how long the JVM and the Spring context have taken to start, once the application has started:
+ * before the run of a command line application begins, or once the web server is up.
+ */
+@Slf4j
+public class StartupReporter implements ApplicationListener<ApplicationStartedEvent> {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String SHARED_ARCHIVE_OPTION = "-XX:SharedArchiveFile=";
+
+    private final String application;
+    private final StartupProperties properties;
+
+    /**
+     * @param application name of the application in the report
+     */
+    public StartupReporter(String application, StartupProperties properties) {
+        this.application = application;
+        this.properties = properties;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationStartedEvent event) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("application", application);
+        report.put("startupMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+        report.put("classesLoaded", ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        report.put("beansCreated", event.getApplicationContext().getBeanFactory().getSingletonCount());
+        report.put("lazyInitialization", properties.isLazyInitialization());
+        report.put("sharedArchive", ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(argument -> argument.startsWith(SHARED_ARCHIVE_OPTION))
+                .map(argument -> argument.substring(SHARED_ARCHIVE_OPTION.length()))
+                .findFirst().orElse(null));
+        log.info("Startup has taken {} ms: {} classes loaded, {} beans created.", report.get("startupMillis"),
+                report.get("classesLoaded"), report.get("beansCreated"));
+
+        if (!isBlank(properties.getReportFile())) {
+            try {
+                objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(properties.getReportFile()), report);
+            } catch (IOException ex) {
+                log.error("Could not write startup report to {}", properties.getReportFile(), ex);
+            }
+        }
+        if (properties.isExitAfterStartup()) {
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+}
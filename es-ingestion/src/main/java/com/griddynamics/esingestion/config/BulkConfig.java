@@ -0,0 +1,28 @@
+package com.griddynamics.esingestion.config;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Limits of the bulk requests sent by {@link com.griddynamics.esingestion.ingest.BulkIngester}.
+ * The configs of this package are bound by each application under its own properties prefix.
+ */
+@Data
+public class BulkConfig {
+    // A bulk request is sent as soon as one of these limits is reached
+    private int initialActions = 1000;
+    private DataSize maxSize = DataSize.ofMegabytes(10);
+    private Duration flushInterval = Duration.ofSeconds(5);
+
+    // Number of bulk requests which can be executed at the same time
+    private int concurrentRequests = 2;
+
+    // The number of actions per bulk is adjusted between these limits, depending on the
+    // "took" time and the rejection rate of the bulk responses
+    private int minActions = 100;
+    private int maxActions = 10000;
+    private Duration targetTook = Duration.ofSeconds(1);
+    private double maxRejectionRate = 0.01;
+}
@@ -0,0 +1,16 @@
+package com.griddynamics.esingestion.config;
+
+import com.griddynamics.esingestion.model.DuplicatePolicy;
+import lombok.Data;
+
+/**
+ * Detection of documents with the same id in the input, see {@link com.griddynamics.esingestion.ingest.DuplicateIdFilter}.
+ */
+@Data
+public class DuplicateHandlingConfig {
+    private DuplicatePolicy policy = DuplicatePolicy.REJECT;
+    // Numeric ids are kept in a primitive hash set, other ids go through a Bloom filter sized for this many ids
+    private int expectedStringIds = 10_000_000;
+    // False positives of the Bloom filter only cost an exact lookup
+    private double falsePositiveRate = 0.01;
+}
@@ -0,0 +1,22 @@
+package com.griddynamics.esingestion.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Retries of rejected bulk items and handling of the items which could not be indexed.
+ */
+@Data
+public class FailureHandlingConfig {
+    // Items rejected with 429 are resent up to maxRetries times with exponential backoff and jitter
+    private int maxRetries = 5;
+    private Duration initialBackoff = Duration.ofMillis(200);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+
+    // Items which could not be indexed are written to this NDJSON file, blank disables it
+    private String deadLetterFile = "dead-letter.ndjson";
+
+    // The alias is not moved to a new index when more documents than this have failed
+    private long maxFailedDocuments = 0;
+}
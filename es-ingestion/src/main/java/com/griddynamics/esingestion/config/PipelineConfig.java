@@ -0,0 +1,22 @@
+package com.griddynamics.esingestion.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Sizing of {@link com.griddynamics.esingestion.ingest.IndexingPipeline}.
+ */
+@Data
+public class PipelineConfig {
+    // Number of parser/transformer threads, 0 means one per available processor
+    private int workers = 0;
+    // Capacity of the queue between the reader and the workers
+    private int queueCapacity = 1000;
+    // How often the progress and queue depths are logged
+    private Duration progressInterval = Duration.ofSeconds(10);
+
+    public int getEffectiveWorkers() {
+        return workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+}
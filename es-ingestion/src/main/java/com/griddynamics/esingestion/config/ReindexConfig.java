@@ -0,0 +1,23 @@
+package com.griddynamics.esingestion.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Server-side copy of one index into another, see {@link com.griddynamics.esingestion.index.Reindexer}.
+ */
+@Data
+public class ReindexConfig {
+    // Number of parallel slices, 0 means one per shard of the source index
+    private int slices = 0;
+    // Documents per scroll batch of every slice
+    private int batchSize = 1000;
+    // Throttle of the whole reindex, 0 means unthrottled
+    private float requestsPerSecond = 0;
+    // Painless script run on every document, e.g. to rename or drop fields, blank means documents are copied as they are
+    private String script = "";
+    // How long the reindex may take, and how often its progress is checked through the tasks API
+    private Duration timeout = Duration.ofHours(2);
+    private Duration pollInterval = Duration.ofSeconds(10);
+}
@@ -0,0 +1,23 @@
+package com.griddynamics.esingestion.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Shared filesystem snapshots of index generations, see {@link com.griddynamics.esingestion.index.SnapshotManager}.
+ */
+@Data
+public class SnapshotConfig {
+    // Snapshot every new generation once it has the alias
+    private boolean enabled = false;
+    // Repository of type "fs", registered on first use. The location must be under path.repo of every node
+    private String repository = "product_snapshots";
+    private String location = "product_snapshots";
+    private boolean compress = true;
+    // Number of newest snapshots which are kept, older ones are deleted after a new snapshot
+    private int keep = 3;
+    // How long a snapshot or a restore may take, and how often its progress is checked
+    private Duration timeout = Duration.ofMinutes(30);
+    private Duration pollInterval = Duration.ofSeconds(5);
+}
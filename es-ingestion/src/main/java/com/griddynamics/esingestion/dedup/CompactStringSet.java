@@ -0,0 +1,131 @@
+package com.griddynamics.esingestion.dedup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact set of strings which keeps their UTF-8 bytes back to back in large chunks, instead of a String
+ * and a map entry object per value. The hash table holds the chunk addresses of the values. Not thread-safe.
+ */
+class CompactStringSet {
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+    private static final int LENGTH_BYTES = 2;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int chunkPosition = CHUNK_SIZE;
+    // Address of a value plus one, zero marks an empty slot
+    private long[] slots = new long[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size;
+
+    /**
+     * @return false if the value is in the set already
+     */
+    boolean add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            if (hashes[slot] == hash && equalsAt(slots[slot] - 1, bytes)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, hash, bytes);
+        return true;
+    }
+
+    /**
+     * Adds a value which is known not to be in the set, without comparing it to the values with the same slot.
+     */
+    void addNew(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, hash, bytes);
+    }
+
+    // Arrays.hashCode mixed with the finalizer of MurmurHash3, so that similar ids spread over the table
+    private static int hash(byte[] bytes) {
+        int hash = Arrays.hashCode(bytes);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    long size() {
+        return size;
+    }
+
+    private void insert(int slot, int hash, byte[] bytes) {
+        if (bytes.length >= 1 << (8 * LENGTH_BYTES)) {
+            throw new IllegalArgumentException("Id is too long: " + bytes.length + " bytes");
+        }
+        if (chunkPosition + LENGTH_BYTES + bytes.length > CHUNK_SIZE) {
+            chunks.add(new byte[CHUNK_SIZE]);
+            chunkPosition = 0;
+        }
+        byte[] chunk = chunks.get(chunks.size() - 1);
+        long address = ((long) (chunks.size() - 1) << CHUNK_BITS) | chunkPosition;
+        chunk[chunkPosition] = (byte) (bytes.length >>> 8);
+        chunk[chunkPosition + 1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, chunk, chunkPosition + LENGTH_BYTES, bytes.length);
+        chunkPosition += LENGTH_BYTES + bytes.length;
+
+        slots[slot] = address + 1;
+        hashes[slot] = hash;
+        if (++size > slots.length * MAX_LOAD_FACTOR) {
+            grow();
+        }
+    }
+
+    private boolean equalsAt(long address, byte[] bytes) {
+        byte[] chunk = chunks.get((int) (address >>> CHUNK_BITS));
+        int position = (int) (address & (CHUNK_SIZE - 1));
+        int length = ((chunk[position] & 0xFF) << 8) | (chunk[position + 1] & 0xFF);
+        if (length != bytes.length) {
+            return false;
+        }
+        position += LENGTH_BYTES;
+        for (int i = 0; i < length; i++) {
+            if (chunk[position + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        if (slots.length >= 1 << 30) {
+            throw new IllegalStateException("Too many ids to check for duplicates: " + size);
+        }
+        long[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        slots = new long[oldSlots.length * 2];
+        hashes = new int[oldSlots.length * 2];
+        mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != 0) {
+                int slot = oldHashes[i] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.griddynamics.esingestion.dedup;
+
+/**
+ * Set of primitive longs with open addressing and linear probing, 8 bytes per slot and no object per entry.
+ * Zero marks an empty slot, so the zero value itself is kept in a separate flag. Not thread-safe.
+ */
+class LongHashSet {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private long[] slots = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size;
+    private boolean hasZero;
+
+    /**
+     * @return false if the value is in the set already
+     */
+    boolean add(long value) {
+        if (value == 0) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        int slot = slotOf(value);
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+        if (++size > slots.length * MAX_LOAD_FACTOR) {
+            grow();
+        }
+        return true;
+    }
+
+    long size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    private int slotOf(long value) {
+        // Finalizer of MurmurHash3, consecutive ids must not end up in consecutive slots
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    private void grow() {
+        if (slots.length >= 1 << 30) {
+            throw new IllegalStateException("Too many ids to check for duplicates: " + size);
+        }
+        long[] oldSlots = slots;
+        slots = new long[oldSlots.length * 2];
+        mask = slots.length - 1;
+        for (long value : oldSlots) {
+            if (value != 0) {
+                int slot = slotOf(value);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = value;
+            }
+        }
+    }
+}
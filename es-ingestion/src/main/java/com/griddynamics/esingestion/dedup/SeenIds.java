@@ -0,0 +1,65 @@
+package com.griddynamics.esingestion.dedup;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Ids which have been seen in an indexing run, compact enough for tens of millions of documents.
+ * Decimal ids, bare or as a JSON string, are kept as primitive longs. Other ids are checked against
+ * a Bloom filter first: most ids are new, and they are added without looking them up, while the ids
+ * the filter may have seen are looked up in an exact set. Not thread-safe.
+ */
+public class SeenIds {
+
+    private static final long NOT_NUMERIC = Long.MIN_VALUE;
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    private final LongHashSet numericIds = new LongHashSet();
+    private final CompactStringSet stringIds = new CompactStringSet();
+    private final BloomFilter<CharSequence> stringFilter;
+
+    public SeenIds(int expectedStringIds, double falsePositiveRate) {
+        stringFilter = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), expectedStringIds, falsePositiveRate);
+    }
+
+    /**
+     * @return false if the id has been seen already
+     */
+    public boolean add(String id) {
+        long numericId = toNumeric(id);
+        if (numericId != NOT_NUMERIC) {
+            return numericIds.add(numericId);
+        }
+        if (!stringFilter.mightContain(id)) {
+            stringFilter.put(id);
+            stringIds.addNew(id);
+            return true;
+        }
+        return stringIds.add(id);
+    }
+
+    public long size() {
+        return numericIds.size() + stringIds.size();
+    }
+
+    // "123" and 123 are different ids, the quoted one is stored with its bits inverted, which makes it negative
+    private static long toNumeric(String id) {
+        boolean quoted = id.length() > 2 && id.charAt(0) == '"' && id.charAt(id.length() - 1) == '"';
+        int start = quoted ? 1 : 0;
+        int end = quoted ? id.length() - 1 : id.length();
+        int digits = end - start;
+        if (digits == 0 || digits > MAX_NUMERIC_DIGITS || (id.charAt(start) == '0' && digits > 1)) {
+            return NOT_NUMERIC;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_NUMERIC;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return quoted ? ~value : value;
+    }
+}
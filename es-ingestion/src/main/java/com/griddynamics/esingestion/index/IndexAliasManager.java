@@ -0,0 +1,135 @@
+package com.griddynamics.esingestion.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Manages the generations of an index behind an alias: every build goes to a new index named
+ * {@code <alias>_<yyyyMMddHHmmss>}, which gets the alias when it is ready, and old generations are deleted.
+ */
+@Slf4j
+public class IndexAliasManager {
+
+    private final RestHighLevelClient esClient;
+    private final String aliasName;
+
+    public IndexAliasManager(RestHighLevelClient esClient, String aliasName) {
+        this.esClient = esClient;
+        this.aliasName = aliasName;
+    }
+
+    public String getAliasName() {
+        return aliasName;
+    }
+
+    public String newIndexName() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+        return aliasName + "_" + dateFormat.format(new Date());
+    }
+
+    public void createIndex(String indexName, String settings, String mappings) {
+        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName)
+                .mapping(mappings, XContentType.JSON)
+                .settings(settings, XContentType.JSON);
+
+        CreateIndexResponse createIndexResponse;
+        try {
+            createIndexResponse = esClient.indices().create(createIndexRequest, RequestOptions.DEFAULT);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during creating ES index.", ex);
+        }
+
+        if (!createIndexResponse.isAcknowledged()) {
+            throw new RuntimeException("Creating index not acknowledged for indexName: " + indexName);
+        } else {
+            log.info("Index {} has been created.", indexName);
+        }
+    }
+
+    public boolean indexExists(String indexName) {
+        try {
+            return esClient.indices().exists(new GetIndexRequest(indexName), RequestOptions.DEFAULT);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during checking if index " + indexName + " exists", ex);
+        }
+    }
+
+    /**
+     * @return the newest index the alias points to, or null if there is none
+     */
+    public String getCurrentIndex() {
+        try {
+            return getIndicesOfAlias().stream().max(Comparator.naturalOrder()).orElse(null);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during getting indices of alias " + aliasName, ex);
+        }
+    }
+
+    /**
+     * Removes the alias from its current indices and adds it to the given one in a single request,
+     * so searches never see the alias missing or pointing at two generations.
+     */
+    public void moveAliasTo(String indexName) {
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        try {
+            getIndicesOfAlias().forEach(index -> request.addAliasAction(
+                    new AliasActions(AliasActions.Type.REMOVE).index(index).alias(aliasName)));
+            request.addAliasAction(new AliasActions(AliasActions.Type.ADD).index(indexName).alias(aliasName));
+            esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+            log.info("Alias {} has been moved to index {}.", aliasName, indexName);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during moving alias " + aliasName + " to index " + indexName, ex);
+        }
+    }
+
+    /**
+     * Deletes all generations except the newest {@code keep} ones. Failures are logged, old generations
+     * only take disk space.
+     */
+    public void deleteAllExceptLast(int keep) {
+        try {
+            List<String> indices = new ArrayList<>(getIndicesFromPattern(aliasName + "_*"));
+            indices.sort(Comparator.naturalOrder());
+            if (indices.size() > keep) {
+                indices.subList(0, indices.size() - keep).forEach(this::deleteIndex);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.error("Could not delete old indices of alias {}", aliasName, ex);
+        }
+    }
+
+    public void deleteIndex(String indexName) {
+        try {
+            esClient.indices().delete(new DeleteIndexRequest(indexName), RequestOptions.DEFAULT);
+            log.info("Index {} has been deleted.", indexName);
+        } catch (IOException | RuntimeException ex) {
+            log.error("Could not delete index {}", indexName, ex);
+        }
+    }
+
+    private Set<String> getIndicesOfAlias() throws IOException {
+        return esClient.indices().getAlias(new GetAliasesRequest(aliasName), RequestOptions.DEFAULT).getAliases().keySet();
+    }
+
+    private Set<String> getIndicesFromPattern(String pattern) throws IOException {
+        return Set.copyOf(Arrays.asList(esClient.indices().get(new GetIndexRequest(pattern), RequestOptions.DEFAULT).getIndices()));
+    }
+}
@@ -0,0 +1,127 @@
+package com.griddynamics.esingestion.index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esingestion.config.ReindexConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.reindex.ReindexRequest;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Fills an index from another one with a sliced {@code _reindex} which runs as a task on the cluster, so documents
+ * are not read, parsed and sent by the client again. Used when only the settings or the mappings have changed.
+ * Progress is followed through the tasks API.
+ */
+@Slf4j
+public class Reindexer {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String PAINLESS = "painless";
+    private static final String AUTO_SLICES = "auto";
+
+    private final RestHighLevelClient esClient;
+    private final ReindexConfig config;
+
+    public Reindexer(RestHighLevelClient esClient, ReindexConfig config) {
+        this.esClient = esClient;
+        this.config = config;
+    }
+
+    /**
+     * Copies every document of the source index to the destination index and waits until it is done.
+     * The task is cancelled if it takes longer than the timeout.
+     *
+     * @return number of documents which have been written to the destination index
+     */
+    public long reindex(String sourceIndex, String destIndex) {
+        ReindexRequest reindexRequest = new ReindexRequest()
+                .setSourceIndices(sourceIndex)
+                .setDestIndex(destIndex)
+                .setDestOpType("create")
+                .setSourceBatchSize(config.getBatchSize());
+        if (isNotBlank(config.getScript())) {
+            reindexRequest.setScript(new Script(ScriptType.INLINE, PAINLESS, config.getScript(), Collections.emptyMap()));
+        }
+        // The high-level client drops the slices parameter, so the task is submitted with the low-level one
+        Request request = new Request("POST", "/_reindex");
+        request.addParameter("wait_for_completion", "false");
+        request.addParameter("slices", config.getSlices() > 0 ? Integer.toString(config.getSlices()) : AUTO_SLICES);
+        if (config.getRequestsPerSecond() > 0) {
+            request.addParameter("requests_per_second", Float.toString(config.getRequestsPerSecond()));
+        }
+        request.setJsonEntity(Strings.toString(reindexRequest));
+
+        long startedAt = System.currentTimeMillis();
+        String taskId;
+        try (InputStream content = esClient.getLowLevelClient().performRequest(request).getEntity().getContent()) {
+            taskId = objectMapper.readTree(content).path("task").asText();
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during starting reindex of " + sourceIndex + " into " + destIndex, ex);
+        }
+        log.info("Reindex of {} into {} has been started as task {}.", sourceIndex, destIndex, taskId);
+
+        JsonNode task = getTask(taskId);
+        while (!task.path("completed").asBoolean()) {
+            if (System.currentTimeMillis() - startedAt > config.getTimeout().toMillis()) {
+                cancelTask(taskId);
+                throw new RuntimeException("Reindex of " + sourceIndex + " into " + destIndex + " has not completed in " + config.getTimeout());
+            }
+            JsonNode status = task.path("task").path("status");
+            log.info("Reindex of {} into {}: {} of {} documents, {} batches.", sourceIndex, destIndex,
+                    status.path("created").asLong() + status.path("updated").asLong(), status.path("total").asLong(),
+                    status.path("batches").asLong());
+            sleep();
+            task = getTask(taskId);
+        }
+
+        if (task.hasNonNull("error")) {
+            throw new RuntimeException("Reindex of " + sourceIndex + " into " + destIndex + " has failed: " + task.get("error"));
+        }
+        JsonNode response = task.path("response");
+        if (response.path("failures").size() > 0) {
+            throw new RuntimeException("Reindex of " + sourceIndex + " into " + destIndex + " has " + response.path("failures").size()
+                    + " failures, the first one: " + response.path("failures").get(0));
+        }
+        long written = response.path("created").asLong() + response.path("updated").asLong();
+        log.info("Reindex of {} into {} has written {} of {} documents ({} noops) in {} ms.", sourceIndex, destIndex, written,
+                response.path("total").asLong(), response.path("noops").asLong(), System.currentTimeMillis() - startedAt);
+        return written;
+    }
+
+    private JsonNode getTask(String taskId) {
+        try (InputStream content = esClient.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + taskId))
+                .getEntity().getContent()) {
+            return objectMapper.readTree(content);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during getting the status of task " + taskId, ex);
+        }
+    }
+
+    private void cancelTask(String taskId) {
+        try {
+            esClient.getLowLevelClient().performRequest(new Request("POST", "/_tasks/" + taskId + "/_cancel"));
+            log.info("Task {} has been cancelled.", taskId);
+        } catch (IOException ex) {
+            log.error("Could not cancel task {}", taskId, ex);
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(config.getPollInterval().toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a reindex", ex);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.griddynamics.esingestion.index;
+
+import com.griddynamics.esingestion.config.SnapshotConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.repositories.put.PutRepositoryRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.create.CreateSnapshotRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.delete.DeleteSnapshotRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.get.GetSnapshotsRequest;
+import org.elasticsearch.action.admin.cluster.snapshots.restore.RestoreSnapshotRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.snapshots.SnapshotInfo;
+import org.elasticsearch.snapshots.SnapshotState;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshots the generations of an index behind an alias to a shared filesystem repository, and restores the newest
+ * one, so that a lost index comes back without reading the source data again. A snapshot has the name of its
+ * generation and contains only that index.
+ */
+@Slf4j
+public class SnapshotManager {
+
+    private static final String REPOSITORY_TYPE = "fs";
+
+    private final RestHighLevelClient esClient;
+    private final String aliasName;
+    private final SnapshotConfig config;
+
+    public SnapshotManager(RestHighLevelClient esClient, String aliasName, SnapshotConfig config) {
+        this.esClient = esClient;
+        this.aliasName = aliasName;
+        this.config = config;
+    }
+
+    /**
+     * Registers the repository, or updates its settings if it exists. Nodes check that they can write to it.
+     */
+    public void registerRepository() {
+        PutRepositoryRequest request = new PutRepositoryRequest(config.getRepository())
+                .type(REPOSITORY_TYPE)
+                .settings(Settings.builder()
+                        .put("location", config.getLocation())
+                        .put("compress", config.isCompress())
+                        .build());
+        try {
+            esClient.snapshot().createRepository(request, RequestOptions.DEFAULT);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during registering snapshot repository " + config.getRepository(), ex);
+        }
+    }
+
+    /**
+     * Snapshots a generation and waits until the snapshot is complete.
+     */
+    public void snapshot(String indexName) {
+        registerRepository();
+        long startedAt = System.currentTimeMillis();
+        CreateSnapshotRequest request = new CreateSnapshotRequest(config.getRepository(), indexName)
+                .indices(indexName)
+                .includeGlobalState(false)
+                .waitForCompletion(false);
+        try {
+            esClient.snapshot().create(request, RequestOptions.DEFAULT);
+            SnapshotInfo snapshot = getSnapshot(indexName);
+            while (snapshot.state() == SnapshotState.IN_PROGRESS) {
+                checkTimeout(startedAt, "Snapshot " + indexName);
+                sleep();
+                snapshot = getSnapshot(indexName);
+            }
+            if (snapshot.state() != SnapshotState.SUCCESS) {
+                throw new RuntimeException("Snapshot " + indexName + " has ended in state " + snapshot.state() + ": " + snapshot.reason());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during taking snapshot " + indexName, ex);
+        }
+        log.info("Snapshot {} has been taken to repository {} in {} ms.", indexName, config.getRepository(),
+                System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * @return name of the index in the newest successful snapshot, or null if there is none
+     */
+    public String getLatestSnapshot() {
+        // After the loss of a cluster the repository is not registered on the new one yet
+        registerRepository();
+        return getSnapshots().stream()
+                .filter(snapshot -> snapshot.state() == SnapshotState.SUCCESS)
+                .max(Comparator.comparingLong(SnapshotInfo::startTime))
+                .map(snapshot -> snapshot.snapshotId().getName())
+                .orElse(null);
+    }
+
+    /**
+     * Restores the index of a snapshot under its own name and waits until all its primaries are active,
+     * so it can be searched. The index must not exist.
+     */
+    public void restore(String snapshotName) {
+        registerRepository();
+        long startedAt = System.currentTimeMillis();
+        RestoreSnapshotRequest request = new RestoreSnapshotRequest(config.getRepository(), snapshotName)
+                .indices(snapshotName)
+                .includeGlobalState(false)
+                .includeAliases(false)
+                .waitForCompletion(false);
+        try {
+            esClient.snapshot().restore(request, RequestOptions.DEFAULT);
+            ClusterHealthRequest healthRequest = new ClusterHealthRequest(snapshotName)
+                    .waitForYellowStatus()
+                    .timeout(TimeValue.timeValueMillis(config.getPollInterval().toMillis()));
+            ClusterHealthResponse healthResponse = esClient.cluster().health(healthRequest, RequestOptions.DEFAULT);
+            while (healthResponse.isTimedOut()) {
+                checkTimeout(startedAt, "Restore of index " + snapshotName);
+                healthResponse = esClient.cluster().health(healthRequest, RequestOptions.DEFAULT);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during restoring snapshot " + snapshotName, ex);
+        }
+        log.info("Index {} has been restored from repository {} in {} ms.", snapshotName, config.getRepository(),
+                System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Deletes all snapshots of the alias except the newest {@code keep} ones. Failures are logged,
+     * old snapshots only take disk space.
+     */
+    public void deleteAllExceptLast(int keep) {
+        try {
+            List<SnapshotInfo> snapshots = getSnapshots().stream()
+                    .sorted(Comparator.comparingLong(SnapshotInfo::startTime))
+                    .collect(Collectors.toList());
+            for (SnapshotInfo snapshot : snapshots.subList(0, Math.max(0, snapshots.size() - keep))) {
+                String name = snapshot.snapshotId().getName();
+                esClient.snapshot().delete(new DeleteSnapshotRequest(config.getRepository(), name), RequestOptions.DEFAULT);
+                log.info("Snapshot {} has been deleted.", name);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.error("Could not delete old snapshots of alias {}", aliasName, ex);
+        }
+    }
+
+    private List<SnapshotInfo> getSnapshots() {
+        GetSnapshotsRequest request = new GetSnapshotsRequest(config.getRepository(), new String[]{aliasName + "_*"})
+                .ignoreUnavailable(true);
+        try {
+            return esClient.snapshot().get(request, RequestOptions.DEFAULT).getSnapshots();
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during listing snapshots of repository " + config.getRepository(), ex);
+        }
+    }
+
+    private SnapshotInfo getSnapshot(String snapshotName) throws IOException {
+        List<SnapshotInfo> snapshots = esClient.snapshot()
+                .get(new GetSnapshotsRequest(config.getRepository(), new String[]{snapshotName}), RequestOptions.DEFAULT)
+                .getSnapshots();
+        if (snapshots.isEmpty()) {
+            throw new RuntimeException("Snapshot " + snapshotName + " not found in repository " + config.getRepository());
+        }
+        return snapshots.get(0);
+    }
+
+    private void checkTimeout(long startedAt, String operation) {
+        if (System.currentTimeMillis() - startedAt > config.getTimeout().toMillis()) {
+            throw new RuntimeException(operation + " has not completed in " + config.getTimeout());
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(config.getPollInterval().toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a snapshot", ex);
+        }
+    }
+}
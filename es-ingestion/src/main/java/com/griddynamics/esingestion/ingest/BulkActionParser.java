@@ -0,0 +1,68 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esingestion.model.BulkAction;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses an action and source pair returned by {@link BulkActionSplitter}. Only the small action line is
+ * parsed, the source is sent as it is and Elasticsearch reports it back if it is malformed.
+ */
+public final class BulkActionParser {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BulkActionParser() {
+    }
+
+    public static BulkAction parse(ByteBuffer pair) throws IOException {
+        int limit = pair.limit();
+        int actionEnd = 0;
+        while (actionEnd < limit && pair.get(actionEnd) != '\n') {
+            actionEnd++;
+        }
+        int sourceStart = JsonBytes.skipWhitespace(pair, actionEnd, limit);
+        int sourceEnd = limit;
+        while (sourceEnd > sourceStart && JsonBytes.isWhitespace(pair.get(sourceEnd - 1))) {
+            sourceEnd--;
+        }
+
+        byte[] action = toBytes(pair, 0, actionEnd);
+        DocWriteRequest.OpType opType;
+        String index;
+        String id;
+        try {
+            JsonNode actionJsonNode = objectMapper.readTree(action);
+            opType = DocWriteRequest.OpType.fromString(actionJsonNode.fieldNames().next());
+
+            JsonNode metadataJsonNode = actionJsonNode.iterator().next();
+            JsonNode indexJsonNode = metadataJsonNode.get("_index");
+            index = indexJsonNode != null ? indexJsonNode.textValue() : null;
+
+            JsonNode idJsonNode = metadataJsonNode.get("_id");
+            id = idJsonNode != null ? idJsonNode.textValue() : null;
+        } catch (IOException | RuntimeException ex) {
+            throw new IOException("Action line " + new String(action, StandardCharsets.UTF_8) + " can not be parsed: " + ex.getMessage(), ex);
+        }
+        if (opType != DocWriteRequest.OpType.INDEX && opType != DocWriteRequest.OpType.CREATE) {
+            throw new IOException("Only index and create actions are supported, got " + opType.getLowercase());
+        }
+
+        if (sourceStart == sourceEnd || pair.get(sourceStart) != '{') {
+            throw new IOException("Source line is not a JSON object: " + new String(toBytes(pair, sourceStart, sourceEnd), StandardCharsets.UTF_8));
+        }
+        return new BulkAction(opType, index, id, new BytesArray(toBytes(pair, sourceStart, sourceEnd)));
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.duplicate().position(start).get(bytes);
+        return bytes;
+    }
+}
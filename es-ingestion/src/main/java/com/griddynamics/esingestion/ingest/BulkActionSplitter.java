@@ -0,0 +1,85 @@
+package com.griddynamics.esingestion.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits input in the _bulk format into slices which hold an action line and its source line,
+ * to be parsed by {@link BulkActionParser}. Empty lines are skipped. Delete actions have no source line,
+ * their slices hold the action line only. Any other action without a source at the end of the input is ignored.
+ */
+@Slf4j
+public class BulkActionSplitter implements DocumentSource {
+
+    private final ByteWindow window;
+    private int position;
+
+    public BulkActionSplitter(ByteWindow window) {
+        this.window = window;
+    }
+
+    @Override
+    public ByteBuffer next() throws IOException {
+        while (true) {
+            ByteBuffer buffer = window.buffer();
+            int limit = buffer.limit();
+            // Leading whitespace includes empty lines
+            int start = JsonBytes.skipWhitespace(buffer, position, limit);
+            int actionEnd = indexOfNewLine(buffer, start, limit);
+            boolean delete = isDeleteAction(buffer, start, actionEnd < 0 ? limit : actionEnd);
+            int sourceStart = actionEnd < 0 ? limit : JsonBytes.skipWhitespace(buffer, actionEnd + 1, limit);
+            int end = delete ? actionEnd : indexOfNewLine(buffer, sourceStart, limit);
+            if (end < 0) {
+                if (window.advance(start)) {
+                    position = 0;
+                    continue;
+                }
+                position = limit;
+                if (!delete && sourceStart == limit) {
+                    if (start < limit) {
+                        log.warn("Ignoring an action without a source at the end of the bulk data.");
+                    }
+                    return null;
+                }
+                // The last line has no line terminator
+                end = limit;
+            }
+            position = end < limit ? end + 1 : limit;
+            return buffer.duplicate().position(start).limit(end).slice();
+        }
+    }
+
+    // The action name is the first field of the action line, e.g. {"delete":{"_id":"1"}}
+    private static boolean isDeleteAction(ByteBuffer buffer, int start, int end) {
+        if (start >= end || buffer.get(start) != '{') {
+            return false;
+        }
+        int nameStart = JsonBytes.skipWhitespace(buffer, start + 1, end);
+        if (nameStart >= end || buffer.get(nameStart) != '"') {
+            return false;
+        }
+        int nameEnd = JsonBytes.findStringEnd(buffer, nameStart, end);
+        return nameEnd > 0 && JsonBytes.equalsAscii(buffer, nameStart, nameEnd, "\"delete\"");
+    }
+
+    private static int indexOfNewLine(ByteBuffer buffer, int start, int limit) {
+        for (int position = start; position < limit; position++) {
+            if (buffer.get(position) == '\n') {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getOffset() {
+        return window.offset() + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window.close();
+    }
+}
@@ -0,0 +1,54 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adjusts the number of actions per bulk request: grows it additively while the cluster keeps up
+ * and shrinks it multiplicatively when bulks get slow or items get rejected.
+ */
+@Slf4j
+public class BulkBatchSizer {
+
+    private final int minActions;
+    private final int maxActions;
+    private final long targetTookMillis;
+    private final double maxRejectionRate;
+
+    private int batchSize;
+
+    public BulkBatchSizer(BulkConfig config) {
+        this.minActions = Math.max(1, config.getMinActions());
+        this.maxActions = Math.max(minActions, config.getMaxActions());
+        this.targetTookMillis = config.getTargetTook().toMillis();
+        this.maxRejectionRate = config.getMaxRejectionRate();
+        this.batchSize = Math.min(maxActions, Math.max(minActions, config.getInitialActions()));
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized void onBulkCompleted(int actions, long tookMillis, int rejectedActions) {
+        int previous = batchSize;
+        double rejectionRate = actions == 0 ? 0.0 : (double) rejectedActions / actions;
+
+        if (rejectionRate > maxRejectionRate || tookMillis > 2 * targetTookMillis) {
+            batchSize = Math.max(minActions, batchSize / 2);
+        } else if (tookMillis > targetTookMillis) {
+            batchSize = Math.max(minActions, batchSize * 3 / 4);
+        } else if (actions >= batchSize) {
+            // Grow only after full bulks, bulks flushed by time or size say nothing about the limit
+            batchSize = Math.min(maxActions, batchSize + Math.max(1, batchSize / 5));
+        }
+
+        if (batchSize != previous) {
+            log.debug("Bulk size changed from {} to {} actions (took {} ms, {} of {} actions rejected).",
+                    previous, batchSize, tookMillis, rejectedActions, actions);
+        }
+    }
+
+    public synchronized void onBulkFailed() {
+        batchSize = Math.max(minActions, batchSize / 2);
+    }
+}
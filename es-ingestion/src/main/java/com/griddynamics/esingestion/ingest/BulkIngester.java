@@ -0,0 +1,203 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Groups write requests into bulk requests which are flushed by number of actions, size or time,
+ * and sends them asynchronously through a {@link BulkSender} with a limited number of bulks in flight.
+ * When the limit is reached, {@link #add(DocWriteRequest)} blocks until one of the bulks completes.
+ * Bulks are sent as {@link BulkRequestBody}, so document sources go to the connection as they are
+ * instead of being parsed and serialized again.
+ * <p>
+ * Items rejected with 429 are resent with exponential backoff and jitter. A bulk keeps its slot while
+ * waiting for a retry, so rejections slow down the producers too. Retries have their own thread, and slots
+ * are only waited for outside of the lock and never by the flush timer, so retries can always run and
+ * free their slots. Items which fail permanently are passed to the {@link DeadLetterWriter}.
+ * <p>
+ * If version conflicts are expected, items failing with 409 have been superseded by a document with a higher
+ * version: they are counted as superseded instead of failed.
+ * <p>
+ * The completion listener is notified with the requests of every bulk which are done, i.e. indexed or
+ * failed permanently, so callers can track what has been acknowledged.
+ */
+public class BulkIngester implements Closeable {
+
+    private final BulkSender<DocWriteRequest<?>> sender;
+    private final long maxSizeBytes;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private BulkRequest currentBulk = new BulkRequest();
+    private long currentBulkStartedAt;
+    private boolean closed;
+
+    public BulkIngester(RestHighLevelClient esClient, BulkConfig config, FailureHandlingConfig failureConfig, IndexingMetrics metrics) {
+        this.sender = new BulkSender<DocWriteRequest<?>>(esClient, "/_bulk", "bulk-retry", config, failureConfig, metrics) {
+            @Override
+            protected HttpEntity createBody(List<DocWriteRequest<?>> requests) throws IOException {
+                return new BulkRequestBody(requests);
+            }
+
+            @Override
+            protected void writeDeadLetter(DeadLetterWriter deadLetterWriter, DocWriteRequest<?> request,
+                                           BulkItemResponse response, int status, String failureMessage) {
+                deadLetterWriter.write(request, status, failureMessage);
+            }
+        };
+        this.maxSizeBytes = config.getMaxSize().toBytes();
+        this.flushIntervalMillis = config.getFlushInterval().toMillis();
+        this.scheduler = Executors.newScheduledThreadPool(1, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushIfExpired, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void setCompletionListener(Consumer<List<DocWriteRequest<?>>> completionListener) {
+        sender.setCompletionListener(completionListener);
+    }
+
+    public void setVersionConflictsExpected(boolean versionConflictsExpected) {
+        sender.setVersionConflictsExpected(versionConflictsExpected);
+    }
+
+    /**
+     * Keeps the failures already in the dead-letter file, e.g. of the run which is resumed, instead of replacing it.
+     * Must be set before the first request is added.
+     */
+    public void setAppendDeadLetters(boolean appendDeadLetters) {
+        sender.setAppendDeadLetters(appendDeadLetters);
+    }
+
+    /**
+     * Reports a document which has been rejected before it was sent, like a document which has failed permanently.
+     */
+    public void reject(String index, String id, BytesReference source, String reason) {
+        sender.reject(index, id, DocWriteRequest.OpType.INDEX.getLowercase(), RestStatus.CONFLICT.getStatus(), reason, source);
+    }
+
+    public void add(DocWriteRequest<?> request) {
+        BulkRequest bulkRequest;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Bulk ingester has already been closed");
+            }
+            if (currentBulk.numberOfActions() == 0) {
+                currentBulkStartedAt = System.currentTimeMillis();
+            }
+            currentBulk.add(request);
+            if (currentBulk.numberOfActions() < sender.getBatchSize()
+                    && currentBulk.estimatedSizeInBytes() < maxSizeBytes) {
+                return;
+            }
+            bulkRequest = takeCurrentBulk();
+        }
+        sender.send(bulkRequest.requests());
+    }
+
+    public void flush() {
+        BulkRequest bulkRequest;
+        synchronized (this) {
+            bulkRequest = takeCurrentBulk();
+        }
+        if (bulkRequest != null) {
+            sender.send(bulkRequest.requests());
+        }
+    }
+
+    /**
+     * Sends the pending requests if the oldest of them has been waiting for the flush interval.
+     * Never waits for a slot: if all of them are taken, the requests wait for the next call.
+     */
+    public void flushIfExpired() {
+        sender.trySend(() -> {
+            synchronized (this) {
+                if (closed || System.currentTimeMillis() - currentBulkStartedAt < flushIntervalMillis) {
+                    return null;
+                }
+                BulkRequest bulkRequest = takeCurrentBulk();
+                return bulkRequest != null ? bulkRequest.requests() : null;
+            }
+        });
+    }
+
+    // Must be called holding the lock, returns null if there is nothing to send
+    private BulkRequest takeCurrentBulk() {
+        if (currentBulk.numberOfActions() == 0) {
+            return null;
+        }
+        BulkRequest bulkRequest = currentBulk;
+        currentBulk = new BulkRequest();
+        return bulkRequest;
+    }
+
+    public int getConcurrentRequests() {
+        return sender.getConcurrentRequests();
+    }
+
+    public int getInFlightRequests() {
+        return sender.getInFlightRequests();
+    }
+
+    public long getSucceededActions() {
+        return sender.getSucceededActions();
+    }
+
+    public long getFailedActions() {
+        return sender.getFailedActions();
+    }
+
+    public long getRejectedActions() {
+        return sender.getRejectedActions();
+    }
+
+    public long getRetriedActions() {
+        return sender.getRetriedActions();
+    }
+
+    // Counted as succeeded as well
+    public long getSupersededActions() {
+        return sender.getSupersededActions();
+    }
+
+    /**
+     * Sends the remaining requests and waits until all bulks in flight, including their retries, are completed.
+     */
+    @Override
+    public void close() {
+        BulkRequest bulkRequest;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            bulkRequest = takeCurrentBulk();
+        }
+        try {
+            if (bulkRequest != null) {
+                sender.send(bulkRequest.requests());
+            }
+        } finally {
+            scheduler.shutdownNow();
+            sender.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads data which is already in the _bulk format by sending it to the _bulk endpoint of the target index
+ * in chunks which end on action boundaries, as read by {@link BulkActionSplitter}. Delete actions have no source line.
+ * Nothing is parsed or copied: the pairs go to the connection as they are. The only exception are action
+ * lines which name an "_index", they are rewritten to the target index. If sort keys are enabled, every index
+ * or create pair is copied to append the {@link SortKeys sort key} of its "_id" to the source. Updates are sent
+ * as they are: their source line is not the document, and the key of an updated document does not change.
+ * The "_id" is found on the raw bytes of the action line, so neither line is parsed. Chunks are sized by the
+ * bytes which are actually sent.
+ * <p>
+ * Chunks are sent by a {@link BulkSender} like the bulks of {@link BulkIngester}: the number of pairs adapts to the
+ * "took" time, up to concurrentRequests chunks are in flight and items rejected with 429 are resent with
+ * backoff. Other failed items are reported from the response to the {@link DeadLetterWriter}.
+ */
+public class BulkPassthroughLoader implements Closeable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final byte[] INDEX_FIELD_NAME = "\"_index\"".getBytes(StandardCharsets.UTF_8);
+
+    private final String index;
+    private final long maxSizeBytes;
+    private final IndexingMetrics metrics;
+    private final BulkSender<ByteBuffer> sender;
+    private boolean addSortKeys;
+
+    public BulkPassthroughLoader(RestHighLevelClient esClient, String index, BulkConfig config,
+                                 FailureHandlingConfig failureConfig, IndexingMetrics metrics) {
+        this.index = index;
+        this.metrics = metrics;
+        this.maxSizeBytes = config.getMaxSize().toBytes();
+        this.sender = new BulkSender<ByteBuffer>(esClient, "/" + index + "/_bulk", "bulk-passthrough-retry",
+                config, failureConfig, metrics) {
+            @Override
+            protected HttpEntity createBody(List<ByteBuffer> chunk) {
+                return new RawBulkRequestBody(chunk);
+            }
+
+            @Override
+            protected void writeDeadLetter(DeadLetterWriter deadLetterWriter, ByteBuffer pair,
+                                           BulkItemResponse response, int status, String failureMessage) {
+                // The source of a failed pair is only split off here
+                int actionEnd = indexOfNewLine(pair);
+                BytesArray source = null;
+                if (actionEnd < pair.limit()) {
+                    byte[] bytes = new byte[pair.limit() - actionEnd - 1];
+                    pair.duplicate().position(actionEnd + 1).get(bytes);
+                    source = new BytesArray(bytes);
+                }
+                deadLetterWriter.write(index, response != null ? response.getId() : null,
+                        response != null ? response.getOpType().getLowercase() : null, status, failureMessage, source);
+            }
+        };
+    }
+
+    public void setAddSortKeys(boolean addSortKeys) {
+        this.addSortKeys = addSortKeys;
+    }
+
+    /**
+     * Sends all pairs of the source and waits until every chunk, including retries, is completed.
+     * The source must stay open until then.
+     *
+     * @return number of pairs which have been read
+     */
+    public long load(BulkActionSplitter pairs) throws IOException {
+        List<ByteBuffer> chunk = new ArrayList<>();
+        long chunkBytes = 0;
+        long count = 0;
+        ByteBuffer pair;
+        while ((pair = pairs.next()) != null) {
+            count++;
+            metrics.onDocumentRead(pair.remaining());
+            ByteBuffer item = addSortKeys ? withSortKey(withTargetIndex(pair)) : withTargetIndex(pair);
+            chunk.add(item);
+            chunkBytes += item.remaining() + 1;
+            if (chunk.size() >= sender.getBatchSize() || chunkBytes >= maxSizeBytes) {
+                sender.send(chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+        }
+        if (!chunk.isEmpty()) {
+            sender.send(chunk);
+        }
+        sender.awaitInFlight();
+        return count;
+    }
+
+    // Action lines are copied only if they name an index, which must be replaced by the target index
+    private ByteBuffer withTargetIndex(ByteBuffer pair) throws IOException {
+        int actionEnd = indexOfNewLine(pair);
+        if (!contains(pair, actionEnd, INDEX_FIELD_NAME)) {
+            return pair;
+        }
+        byte[] action = new byte[actionEnd];
+        pair.duplicate().get(action);
+        ObjectNode actionNode = (ObjectNode) objectMapper.readTree(action);
+        ObjectNode metadataNode = (ObjectNode) actionNode.elements().next();
+        metadataNode.put("_index", index);
+        byte[] rewritten = objectMapper.writeValueAsBytes(actionNode);
+
+        ByteBuffer result = ByteBuffer.allocate(rewritten.length + pair.limit() - actionEnd);
+        result.put(rewritten).put(pair.duplicate().position(actionEnd)).flip();
+        return result;
+    }
+
+    private ByteBuffer withSortKey(ByteBuffer pair) throws IOException {
+        int actionEnd = indexOfNewLine(pair);
+        if (actionEnd == pair.limit() || !isIndexOrCreate(pair, actionEnd)) {
+            return pair;
+        }
+        String id = findId(pair, actionEnd);
+        if (id == null) {
+            return pair;
+        }
+        byte[] source = SortKeys.appendJsonTo(pair.duplicate().position(actionEnd + 1).slice(), id);
+
+        ByteBuffer result = ByteBuffer.allocate(actionEnd + 1 + source.length);
+        result.put(pair.duplicate().limit(actionEnd + 1)).put(source).flip();
+        return result;
+    }
+
+    // The source line of an update is a partial document or a script, the key is only added to whole documents
+    private static boolean isIndexOrCreate(ByteBuffer pair, int actionEnd) {
+        int position = skipToken(pair, 0, actionEnd, '{');
+        int nameEnd = position >= 0 && position < actionEnd && pair.get(position) == '"' ? JsonBytes.findStringEnd(pair, position, actionEnd) : -1;
+        return nameEnd >= 0 && (JsonBytes.equalsAscii(pair, position, nameEnd, "\"index\"")
+                || JsonBytes.equalsAscii(pair, position, nameEnd, "\"create\""));
+    }
+
+    // Returns the raw "_id" value of an action line like {"index":{"_id":"1"}}, with its quotes, or null if there is none
+    private static String findId(ByteBuffer pair, int actionEnd) throws IOException {
+        int position = skipToken(pair, 0, actionEnd, '{');
+        int nameEnd = position >= 0 && position < actionEnd && pair.get(position) == '"' ? JsonBytes.findStringEnd(pair, position, actionEnd) : -1;
+        position = skipToken(pair, nameEnd, actionEnd, ':');
+        position = skipToken(pair, position, actionEnd, '{');
+        while (position >= 0 && position < actionEnd && pair.get(position) == '"') {
+            int keyEnd = JsonBytes.findStringEnd(pair, position, actionEnd);
+            int valueStart = skipToken(pair, keyEnd, actionEnd, ':');
+            int valueEnd = valueStart >= 0 && valueStart < actionEnd ? JsonBytes.findValueEnd(pair, valueStart, actionEnd) : -1;
+            if (valueEnd < 0) {
+                break;
+            }
+            if (JsonBytes.equalsAscii(pair, position, keyEnd, "\"_id\"")) {
+                byte[] id = new byte[valueEnd - valueStart];
+                pair.duplicate().position(valueStart).get(id);
+                return new String(id, StandardCharsets.UTF_8);
+            }
+            position = JsonBytes.skipWhitespace(pair, valueEnd, actionEnd);
+            if (position >= actionEnd || pair.get(position) != ',') {
+                break;
+            }
+            position = JsonBytes.skipWhitespace(pair, position + 1, actionEnd);
+        }
+        if (position >= 0 && position < actionEnd && pair.get(position) == '}') {
+            return null;
+        }
+        byte[] action = new byte[actionEnd];
+        pair.duplicate().get(action);
+        throw new IOException("Action line " + new String(action, StandardCharsets.UTF_8) + " can not be parsed");
+    }
+
+    // Returns the position after the expected token and the whitespace which follows it, or -1 if it is not there
+    private static int skipToken(ByteBuffer buffer, int position, int limit, char token) {
+        position = position < 0 ? limit : JsonBytes.skipWhitespace(buffer, position, limit);
+        if (position >= limit || buffer.get(position) != token) {
+            return -1;
+        }
+        return JsonBytes.skipWhitespace(buffer, position + 1, limit);
+    }
+
+    private static int indexOfNewLine(ByteBuffer pair) {
+        int position = 0;
+        while (position < pair.limit() && pair.get(position) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean contains(ByteBuffer buffer, int limit, byte[] sequence) {
+        int last = limit - sequence.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < sequence.length && buffer.get(i + j) == sequence[j]) {
+                j++;
+            }
+            if (j == sequence.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getSucceededActions() {
+        return sender.getSucceededActions();
+    }
+
+    public long getFailedActions() {
+        return sender.getFailedActions();
+    }
+
+    public long getRejectedActions() {
+        return sender.getRejectedActions();
+    }
+
+    public long getRetriedActions() {
+        return sender.getRetriedActions();
+    }
+
+    @Override
+    public void close() {
+        sender.close();
+    }
+}
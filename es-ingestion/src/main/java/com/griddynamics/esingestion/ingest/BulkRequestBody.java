@@ -0,0 +1,104 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.index.VersionType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.enumeration;
+
+/**
+ * NDJSON body of a _bulk request. Action lines are generated, while document sources are referenced
+ * as they are and written to the connection one after another, so they are neither parsed nor copied
+ * into an intermediate buffer. The sources must be single-line JSON.
+ */
+class BulkRequestBody extends AbstractHttpEntity {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+    private static final BytesRef NEW_LINE = new BytesRef(new byte[]{'\n'});
+
+    private final List<BytesRef> parts = new ArrayList<>();
+    private long length;
+
+    BulkRequestBody(List<DocWriteRequest<?>> requests) throws IOException {
+        setContentType(NDJSON.toString());
+        ByteArrayOutputStream actionLine = new ByteArrayOutputStream(128);
+        for (DocWriteRequest<?> request : requests) {
+            actionLine.reset();
+            try (JsonGenerator generator = jsonFactory.createGenerator(actionLine)) {
+                generator.writeStartObject();
+                generator.writeObjectFieldStart(request.opType().getLowercase());
+                generator.writeStringField("_index", request.index());
+                if (request.id() != null) {
+                    generator.writeStringField("_id", request.id());
+                }
+                if (request.versionType() != VersionType.INTERNAL) {
+                    generator.writeNumberField("version", request.version());
+                    generator.writeStringField("version_type", request.versionType().name().toLowerCase(Locale.ROOT));
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            add(new BytesRef(actionLine.toByteArray()));
+            add(NEW_LINE);
+
+            if (request.opType() == DocWriteRequest.OpType.INDEX || request.opType() == DocWriteRequest.OpType.CREATE) {
+                add(((IndexRequest) request).source().toBytesRef());
+                add(NEW_LINE);
+            } else if (request.opType() != DocWriteRequest.OpType.DELETE) {
+                throw new IllegalArgumentException("Unsupported bulk operation: " + request.opType());
+            }
+        }
+    }
+
+    private void add(BytesRef part) {
+        parts.add(part);
+        length += part.length;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() {
+        List<InputStream> streams = parts.stream()
+                .map(part -> new ByteArrayInputStream(part.bytes, part.offset, part.length))
+                .collect(Collectors.toList());
+        return new SequenceInputStream(enumeration(streams));
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        for (BytesRef part : parts) {
+            outputStream.write(part.bytes, part.offset, part.length);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
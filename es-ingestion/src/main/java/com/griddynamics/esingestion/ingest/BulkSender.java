@@ -0,0 +1,349 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends bulks of items to a _bulk endpoint through the low-level client, shared by {@link BulkIngester} and
+ * {@link BulkPassthroughLoader}, which only decide how items are written to the request body and to the dead-letter file.
+ * <p>
+ * At most concurrentRequests bulks are in flight. Items rejected with 429 are resent on a separate thread with
+ * exponential backoff and jitter, and a bulk keeps its slot until its retries are completed. The number of items
+ * per bulk is adapted by a {@link BulkBatchSizer}. Items which fail permanently are passed to the {@link DeadLetterWriter}.
+ */
+@Slf4j
+abstract class BulkSender<T> implements Closeable {
+
+    private final RestHighLevelClient esClient;
+    private final String endpoint;
+    private final BulkBatchSizer batchSizer;
+    private final int concurrentRequests;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final DeadLetterWriter deadLetterWriter;
+    private final IndexingMetrics metrics;
+    private final Semaphore inFlightPermits;
+    private final ScheduledExecutorService retryScheduler;
+
+    private final AtomicLong succeededActions = new AtomicLong();
+    private final AtomicLong failedActions = new AtomicLong();
+    private final AtomicLong rejectedActions = new AtomicLong();
+    private final AtomicLong retriedActions = new AtomicLong();
+    private final AtomicLong supersededActions = new AtomicLong();
+    private volatile boolean versionConflictsExpected;
+
+    private volatile Consumer<List<T>> completionListener = items -> {
+    };
+
+    BulkSender(RestHighLevelClient esClient, String endpoint, String threadName, BulkConfig config,
+               FailureHandlingConfig failureConfig, IndexingMetrics metrics) {
+        this.esClient = esClient;
+        this.endpoint = endpoint;
+        this.metrics = metrics;
+        this.batchSizer = new BulkBatchSizer(config);
+        this.concurrentRequests = Math.max(1, config.getConcurrentRequests());
+        this.maxRetries = failureConfig.getMaxRetries();
+        this.initialBackoffMillis = Math.max(1, failureConfig.getInitialBackoff().toMillis());
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, failureConfig.getMaxBackoff().toMillis());
+        this.deadLetterWriter = new DeadLetterWriter(failureConfig.getDeadLetterFile());
+        this.inFlightPermits = new Semaphore(concurrentRequests);
+        this.retryScheduler = Executors.newScheduledThreadPool(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    protected abstract HttpEntity createBody(List<T> items) throws IOException;
+
+    /**
+     * @param response response of the item, null if the whole bulk has failed
+     */
+    protected abstract void writeDeadLetter(DeadLetterWriter deadLetterWriter, T item, BulkItemResponse response,
+                                            int status, String failureMessage);
+
+    void setCompletionListener(Consumer<List<T>> completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    void setVersionConflictsExpected(boolean versionConflictsExpected) {
+        this.versionConflictsExpected = versionConflictsExpected;
+    }
+
+    void setAppendDeadLetters(boolean appendDeadLetters) {
+        deadLetterWriter.setAppend(appendDeadLetters);
+    }
+
+    int getBatchSize() {
+        return batchSizer.getBatchSize();
+    }
+
+    /**
+     * Waits for a slot and sends the items. Must not be called holding a lock which is needed to complete bulks.
+     */
+    void send(List<T> items) {
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a bulk request slot", ex);
+        }
+        execute(items, 0);
+    }
+
+    /**
+     * Sends the items only if a slot is free, without waiting.
+     *
+     * @param items called only when a slot is free, may return null or an empty list if there is nothing to send
+     * @return false if there was no free slot
+     */
+    boolean trySend(Supplier<List<T>> items) {
+        if (!inFlightPermits.tryAcquire()) {
+            return false;
+        }
+        List<T> bulk;
+        try {
+            bulk = items.get();
+        } catch (RuntimeException ex) {
+            inFlightPermits.release();
+            throw ex;
+        }
+        if (bulk == null || bulk.isEmpty()) {
+            inFlightPermits.release();
+        } else {
+            execute(bulk, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Reports an item which has been rejected before it was sent, like an item which has failed permanently.
+     */
+    void reject(String index, String id, String opType, int status, String reason, BytesReference source) {
+        failedActions.incrementAndGet();
+        metrics.onItemFailed();
+        deadLetterWriter.write(index, id, opType, status, reason, source);
+    }
+
+    // Must be called holding a slot, the slot is released when the bulk is completed, including retries
+    private void execute(List<T> items, int attempt) {
+        Request request = new Request("POST", endpoint);
+        try {
+            request.setEntity(createBody(items));
+        } catch (IOException | RuntimeException ex) {
+            onBulkFailure(items, attempt, ex);
+            return;
+        }
+
+        long sentAt = System.nanoTime();
+        esClient.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                long latencyNanos = System.nanoTime() - sentAt;
+                BulkResponse bulkResponse;
+                try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                        DeprecationHandler.THROW_UNSUPPORTED_OPERATION, response.getEntity().getContent())) {
+                    bulkResponse = BulkResponse.fromXContent(parser);
+                } catch (IOException | RuntimeException ex) {
+                    metrics.onBulkFailed(latencyNanos);
+                    onBulkFailure(items, attempt, ex);
+                    return;
+                }
+
+                boolean retryScheduled = false;
+                try {
+                    List<T> retryItems = onBulkResponse(items, bulkResponse, attempt, latencyNanos);
+                    retryScheduled = !retryItems.isEmpty() && scheduleRetry(retryItems, attempt + 1);
+                } finally {
+                    if (!retryScheduled) {
+                        inFlightPermits.release();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Exception ex) {
+                metrics.onBulkFailed(System.nanoTime() - sentAt);
+                onBulkFailure(items, attempt, ex);
+            }
+        });
+    }
+
+    private void onBulkFailure(List<T> items, int attempt, Exception ex) {
+        boolean retryScheduled = false;
+        try {
+            batchSizer.onBulkFailed();
+            if (attempt < maxRetries) {
+                log.warn("Bulk request with {} actions has failed, it will be retried: {}", items.size(), ex.getMessage());
+                retryScheduled = scheduleRetry(items, attempt + 1);
+            } else {
+                log.error("Bulk request with {} actions has failed after {} retries", items.size(), attempt, ex);
+                items.forEach(item -> fail(item, null, RestStatus.INTERNAL_SERVER_ERROR.getStatus(), ex.toString()));
+                completionListener.accept(items);
+            }
+        } finally {
+            if (!retryScheduled) {
+                inFlightPermits.release();
+            }
+        }
+    }
+
+    // Returns the rejected items which should be retried
+    private List<T> onBulkResponse(List<T> items, BulkResponse bulkResponse, int attempt, long latencyNanos) {
+        List<T> retryItems = new ArrayList<>();
+        boolean[] retrying = new boolean[items.size()];
+        int failed = 0;
+        int rejected = 0;
+        for (BulkItemResponse itemResponse : bulkResponse.getItems()) {
+            if (!itemResponse.isFailed()) {
+                continue;
+            }
+            T item = items.get(itemResponse.getItemId());
+            if (versionConflictsExpected && itemResponse.status() == RestStatus.CONFLICT) {
+                supersededActions.incrementAndGet();
+                continue;
+            }
+            boolean isRejected = itemResponse.status() == RestStatus.TOO_MANY_REQUESTS;
+            if (isRejected) {
+                rejected++;
+            }
+            if (isRejected && attempt < maxRetries) {
+                retryItems.add(item);
+                retrying[itemResponse.getItemId()] = true;
+            } else {
+                failed++;
+                fail(item, itemResponse, itemResponse.status().getStatus(), itemResponse.getFailureMessage());
+            }
+        }
+
+        int retried = retryItems.size();
+        int succeeded = items.size() - failed - retried;
+        succeededActions.addAndGet(succeeded);
+        rejectedActions.addAndGet(rejected);
+        retriedActions.addAndGet(retried);
+        batchSizer.onBulkCompleted(items.size(), bulkResponse.getTook().millis(), rejected);
+        metrics.onBulkCompleted(latencyNanos, bulkResponse.getTook().millis(), succeeded, rejected, retried);
+
+        if (failed > 0) {
+            log.warn("{} out of {} actions of a bulk request have failed permanently.", failed, items.size());
+        }
+
+        List<T> completed = new ArrayList<>(items.size() - retried);
+        for (int i = 0; i < items.size(); i++) {
+            if (!retrying[i]) {
+                completed.add(items.get(i));
+            }
+        }
+        completionListener.accept(completed);
+        return retryItems;
+    }
+
+    private boolean scheduleRetry(List<T> retryItems, int attempt) {
+        long backoffMillis = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        // Equal jitter: half of the backoff is fixed, the other half is random
+        long delayMillis = backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        try {
+            retryScheduler.schedule(() -> execute(retryItems, attempt), delayMillis, TimeUnit.MILLISECONDS);
+            log.debug("{} actions will be retried in {} ms (attempt {} of {}).", retryItems.size(), delayMillis, attempt, maxRetries);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            retryItems.forEach(item -> fail(item, null, RestStatus.TOO_MANY_REQUESTS.getStatus(), "Retry could not be scheduled"));
+            completionListener.accept(retryItems);
+            return false;
+        }
+    }
+
+    private void fail(T item, BulkItemResponse response, int status, String failureMessage) {
+        failedActions.incrementAndGet();
+        metrics.onItemFailed();
+        writeDeadLetter(deadLetterWriter, item, response, status, failureMessage);
+    }
+
+    int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    int getInFlightRequests() {
+        return concurrentRequests - inFlightPermits.availablePermits();
+    }
+
+    long getSucceededActions() {
+        return succeededActions.get();
+    }
+
+    long getFailedActions() {
+        return failedActions.get();
+    }
+
+    long getRejectedActions() {
+        return rejectedActions.get();
+    }
+
+    long getRetriedActions() {
+        return retriedActions.get();
+    }
+
+    long getSupersededActions() {
+        return supersededActions.get();
+    }
+
+    /**
+     * Waits until all bulks in flight, including their retries, are completed.
+     */
+    void awaitInFlight() {
+        try {
+            inFlightPermits.acquire(concurrentRequests);
+            inFlightPermits.release(concurrentRequests);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for bulk requests to complete", ex);
+        }
+    }
+
+    /**
+     * Waits for the bulks in flight, then stops the retries and closes the dead-letter file.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitInFlight();
+        } finally {
+            retryScheduler.shutdownNow();
+            try {
+                deadLetterWriter.close();
+            } catch (IOException ex) {
+                log.error("Could not close the dead letter file", ex);
+            }
+        }
+    }
+}
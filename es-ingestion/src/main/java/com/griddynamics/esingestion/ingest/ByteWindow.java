@@ -0,0 +1,31 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A window over the bytes of an input which can only move forward.
+ * Slices of a buffer returned by {@link #buffer()} stay valid after the window has moved,
+ * so records can be handed over to other threads without copying them.
+ */
+public interface ByteWindow extends Closeable {
+
+    /**
+     * @return the bytes of the current window, from position 0 to the limit
+     */
+    ByteBuffer buffer();
+
+    /**
+     * @return offset of the first byte of the current window in the input
+     */
+    long offset();
+
+    /**
+     * Moves the start of the window to {@code keepFrom} (relative to the current window)
+     * and extends it with the following bytes of the input.
+     *
+     * @return false if the input has no more bytes, the window is not changed in this case
+     */
+    boolean advance(int keepFrom) throws IOException;
+}
@@ -0,0 +1,39 @@
+package com.griddynamics.esingestion.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens the right {@link ByteWindow} for a data file.
+ */
+@Slf4j
+public final class ByteWindows {
+
+    private static final int MAPPED_WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    private static final int DECOMPRESSED_CHUNKS = 64;
+
+    private ByteWindows() {
+    }
+
+    /**
+     * Local files are memory-mapped, other resources (e.g. inside a jar) are read as a stream.
+     * Compressed files are decompressed on a dedicated thread, offsets are in the decompressed data.
+     */
+    public static ByteWindow open(Resource resource, long startOffset) throws IOException {
+        Compression compression = Compression.detect(resource.getInputStream());
+        if (compression == Compression.NONE && resource.isFile()) {
+            return new MappedByteWindow(resource.getFile().toPath(), MAPPED_WINDOW_SIZE, startOffset);
+        }
+        InputStream inputStream = resource.getInputStream();
+        if (compression != Compression.NONE) {
+            log.info("Data file {} is {} compressed.", resource.getFilename(), compression.name().toLowerCase());
+            inputStream = new ReadAheadInputStream(compression.decompress(inputStream), STREAM_CHUNK_SIZE,
+                    DECOMPRESSED_CHUNKS, "data-decompressor");
+        }
+        return new StreamByteWindow(inputStream, STREAM_CHUNK_SIZE, startOffset);
+    }
+}
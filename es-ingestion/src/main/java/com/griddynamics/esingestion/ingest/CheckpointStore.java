@@ -0,0 +1,74 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps a checkpoint, e.g. the progress of an indexing run, in a small JSON file. The file is replaced atomically,
+ * so a run which dies at any moment leaves either the previous or the new checkpoint behind.
+ * A blank path disables checkpoints.
+ */
+@Slf4j
+public class CheckpointStore<T> {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Class<T> type;
+    private final Path path;
+    private final Path tempPath;
+
+    public CheckpointStore(String path, Class<T> type) {
+        this.type = type;
+        this.path = path == null || path.trim().isEmpty() ? null : Paths.get(path);
+        this.tempPath = this.path == null ? null : Paths.get(path + ".tmp");
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * @return the saved checkpoint or null if there is none or it can not be read
+     */
+    public T load() {
+        if (path == null || !Files.exists(path)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(path.toFile(), type);
+        } catch (IOException ex) {
+            log.warn("Ignoring checkpoint file {} which can not be read: {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void save(T checkpoint) {
+        if (path == null) {
+            return;
+        }
+        try {
+            objectMapper.writeValue(tempPath.toFile(), checkpoint);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            // Losing a checkpoint only means that more documents are re-sent on resume
+            log.warn("Could not save checkpoint to {}: {}", path, ex.getMessage());
+        }
+    }
+
+    public synchronized void delete() {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("Could not delete checkpoint file {}: {}", path, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression formats of bulk data files, detected by their magic bytes.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    ZSTD;
+
+    static final int HEADER_LENGTH = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static Compression detect(byte[] header) {
+        if (header.length >= 2 && header[0] == (byte) 0x1F && header[1] == (byte) 0x8B) {
+            return GZIP;
+        }
+        if (header.length >= 4 && header[0] == (byte) 0x28 && header[1] == (byte) 0xB5
+                && header[2] == (byte) 0x2F && header[3] == (byte) 0xFD) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    public static Compression detect(InputStream inputStream) throws IOException {
+        try (InputStream input = inputStream) {
+            return detect(input.readNBytes(HEADER_LENGTH));
+        }
+    }
+
+    public InputStream decompress(InputStream inputStream) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(inputStream, BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+            default:
+                return inputStream;
+        }
+    }
+}
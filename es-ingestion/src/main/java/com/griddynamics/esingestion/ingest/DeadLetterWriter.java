@@ -0,0 +1,98 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes requests which could not be executed to an NDJSON file, one line per request with its
+ * target, failure and source, so that they can be inspected and replayed.
+ * The file is created on the first failure only. It is replaced, unless the writer appends to it,
+ * e.g. when a run is resumed and the failures of the previous run must be kept.
+ */
+@Slf4j
+public class DeadLetterWriter implements Closeable {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final Path path;
+    private Writer writer;
+    private boolean append;
+    private long count;
+
+    public DeadLetterWriter(String path) {
+        this.path = path == null || path.trim().isEmpty() ? null : Paths.get(path);
+    }
+
+    /**
+     * Must be set before the first failure is written.
+     */
+    public synchronized void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    public void write(DocWriteRequest<?> request, int status, String failureMessage) {
+        BytesReference source = request instanceof IndexRequest ? ((IndexRequest) request).source() : null;
+        write(request.index(), request.id(), request.opType().getLowercase(), status, failureMessage, source);
+    }
+
+    /**
+     * @param source JSON source of the document, null for requests without one
+     */
+    public synchronized void write(String index, String id, String opType, int status, String failureMessage, BytesReference source) {
+        count++;
+        if (path == null) {
+            log.warn("Request for document {} in index {} has failed with status {}: {}", id, index, status, failureMessage);
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = append
+                        ? Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                        : Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+                log.warn("Failed requests are written to {}", path.toAbsolutePath());
+            }
+            JsonGenerator generator = jsonFactory.createGenerator(writer);
+            generator.writeStartObject();
+            generator.writeStringField("index", index);
+            generator.writeStringField("id", id);
+            generator.writeStringField("opType", opType);
+            generator.writeNumberField("status", status);
+            generator.writeStringField("error", failureMessage);
+            if (source != null) {
+                generator.writeFieldName("source");
+                generator.writeRawValue(source.utf8ToString());
+            }
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException ex) {
+            log.error("Could not write failed request for document {} to {}", id, path, ex);
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Adds derived data to a parsed document before its write request is built, so it does not have to be
+ * computed at query time or outside of the indexer. Called concurrently by the pipeline workers.
+ */
+public interface DocumentEnricher<T> {
+
+    /**
+     * @return name of the enricher, used to enable it in the configuration and to tag its timer
+     */
+    String getName();
+
+    /**
+     * @throws IOException if the document can not be enriched, it is skipped in this case
+     */
+    void enrich(T document) throws IOException;
+
+    /**
+     * Runs the enrichers on a document one after another, recording the time spent by each one.
+     */
+    static <T> void enrichAll(List<DocumentEnricher<T>> enrichers, T document, IndexingMetrics metrics) throws IOException {
+        for (DocumentEnricher<T> enricher : enrichers) {
+            long startedAt = System.nanoTime();
+            enricher.enrich(document);
+            metrics.onDocumentEnriched(enricher.getName(), System.nanoTime() - startedAt);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the raw bytes of a document read by a {@link DocumentSource}. Called concurrently by the pipeline workers.
+ */
+@FunctionalInterface
+public interface DocumentParser<T> {
+
+    /**
+     * @throws IOException if the document is malformed, it is skipped in this case
+     */
+    T parse(ByteBuffer document) throws IOException;
+}
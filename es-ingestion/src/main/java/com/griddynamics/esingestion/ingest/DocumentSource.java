@@ -0,0 +1,21 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads raw documents one by one from an input.
+ */
+public interface DocumentSource extends Closeable {
+
+    /**
+     * @return slice with the raw bytes of the next document or null if the input is exhausted
+     */
+    ByteBuffer next() throws IOException;
+
+    /**
+     * @return offset in the input right after the last document returned by {@link #next()}
+     */
+    long getOffset();
+}
@@ -0,0 +1,107 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.DuplicateHandlingConfig;
+import com.griddynamics.esingestion.dedup.SeenIds;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import com.griddynamics.esingestion.model.DuplicatePolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.common.bytes.BytesArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Finds documents whose id has already been read, before they are parsed or sent, so duplicates are handled
+ * by the {@link DuplicatePolicy} instead of ending up as conflicts in bulk responses. It wraps the source read
+ * by the pipeline, so ids are checked in input order on the reading thread.
+ * <p>
+ * With FIRST_WINS and REJECT the later documents are dropped here, REJECT also reports them to the bulk ingester
+ * as failed. With LAST_WINS every document is passed on, and the pipeline versions the requests by their input
+ * offset, see {@link IndexingPipeline#setVersionByOffset}.
+ * Ids are only known from the point the run has started reading, a resumed run does not see the earlier ones.
+ */
+@Slf4j
+public class DuplicateIdFilter implements DocumentSource {
+
+    /**
+     * Reads the id of a raw document, cheaper than parsing all of it.
+     */
+    @FunctionalInterface
+    public interface IdReader {
+
+        /**
+         * @return id of the document, or null if it has none
+         */
+        String readId(ByteBuffer document) throws IOException;
+    }
+
+    private final DocumentSource source;
+    private final IdReader idReader;
+    private final DuplicatePolicy policy;
+    private final SeenIds seenIds;
+    private final BulkIngester bulkIngester;
+    private final String index;
+    private final IndexingMetrics metrics;
+    private long duplicates;
+
+    public DuplicateIdFilter(DocumentSource source, IdReader idReader, DuplicateHandlingConfig config,
+                             BulkIngester bulkIngester, String index, IndexingMetrics metrics) {
+        this.source = source;
+        this.idReader = idReader;
+        this.policy = config.getPolicy();
+        this.seenIds = new SeenIds(config.getExpectedStringIds(), config.getFalsePositiveRate());
+        this.bulkIngester = bulkIngester;
+        this.index = index;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ByteBuffer next() throws IOException {
+        ByteBuffer document;
+        while ((document = source.next()) != null) {
+            String id;
+            try {
+                id = idReader.readId(document);
+            } catch (IOException ex) {
+                // Malformed documents are skipped by the parser
+                return document;
+            }
+            if (id == null || seenIds.add(id)) {
+                return document;
+            }
+
+            duplicates++;
+            metrics.onDuplicateId();
+            if (policy == DuplicatePolicy.LAST_WINS) {
+                log.debug("Document {} at offset {} replaces an earlier one with the same id.", id, source.getOffset());
+                return document;
+            }
+            if (policy == DuplicatePolicy.REJECT) {
+                byte[] bytes = new byte[document.remaining()];
+                document.duplicate().get(bytes);
+                bulkIngester.reject(index, id, new BytesArray(bytes), "Duplicate id, the first document with this id has been kept");
+            } else {
+                log.debug("Dropping document {} at offset {}, the first document with this id has been kept.", id, source.getOffset());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long getOffset() {
+        return source.getOffset();
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getDistinctIds() {
+        return seenIds.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,293 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.PipelineConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.index.VersionType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Indexes documents in three stages connected by bounded queues:
+ * the calling thread reads raw elements from a {@link DocumentSource}, N workers parse them with a {@link DocumentParser},
+ * run the {@link DocumentEnricher}s on them and build write requests,
+ * and the {@link BulkIngester} sends them with up to M bulks in flight.
+ * A full stage blocks the previous one, so memory usage stays bounded whatever the input size.
+ * If any stage fails, the remaining stages are stopped and the failure is rethrown by {@link #run}.
+ * The request factory may return null for documents which do not need to be sent.
+ * <p>
+ * Index requests can be versioned by the input offset of their document, see {@link #setVersionByOffset}.
+ * <p>
+ * Optionally the pipeline reports checkpoints: input offsets before which every document has been
+ * acknowledged by Elasticsearch (or failed permanently), so an interrupted run can be resumed from there.
+ */
+@Slf4j
+public class IndexingPipeline<T> {
+
+    private static final RawElement END_OF_INPUT = new RawElement(ByteBuffer.allocate(0), -1);
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final PipelineConfig config;
+    private final BulkIngester bulkIngester;
+    private final IndexingMetrics metrics;
+    private final DocumentParser<T> parser;
+    private final List<DocumentEnricher<T>> enrichers;
+
+    private final AtomicLong readDocuments = new AtomicLong();
+    private final AtomicLong processedDocuments = new AtomicLong();
+    private final AtomicLong skippedDocuments = new AtomicLong();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final Map<DocWriteRequest<?>, Long> requestOffsets = Collections.synchronizedMap(new IdentityHashMap<>());
+    private BlockingQueue<RawElement> rawQueue;
+    private OffsetWatermark watermark;
+    private LongConsumer checkpointListener;
+    private boolean versionByOffset;
+    private long lastCheckpoint = -1;
+
+    public IndexingPipeline(PipelineConfig config, BulkIngester bulkIngester, IndexingMetrics metrics, DocumentParser<T> parser) {
+        this(config, bulkIngester, metrics, parser, Collections.emptyList());
+    }
+
+    public IndexingPipeline(PipelineConfig config, BulkIngester bulkIngester, IndexingMetrics metrics, DocumentParser<T> parser,
+                            List<DocumentEnricher<T>> enrichers) {
+        this.config = config;
+        this.bulkIngester = bulkIngester;
+        this.metrics = metrics;
+        this.parser = parser;
+        this.enrichers = enrichers;
+    }
+
+    /**
+     * Index requests get the input offset of their document as an external_gte version, so that of several documents
+     * with the same id the last one in the input is kept, in whatever order the bulks complete. The other ones fail
+     * with a version conflict, which the bulk ingester is told to expect. Only for requests to a new index, whose
+     * documents are all written with these versions.
+     */
+    public void setVersionByOffset(boolean versionByOffset) {
+        this.versionByOffset = versionByOffset;
+        bulkIngester.setVersionConflictsExpected(versionByOffset);
+    }
+
+    /**
+     * @return number of documents which have been read from the input
+     */
+    public long run(DocumentSource source, Function<T, DocWriteRequest<?>> requestFactory) {
+        return run(source, requestFactory, null);
+    }
+
+    /**
+     * @param checkpointListener notified with the input offset before which every document is done,
+     *                           each time it moves forward, may be null
+     * @return number of documents which have been read from the input
+     */
+    public long run(DocumentSource source, Function<T, DocWriteRequest<?>> requestFactory, LongConsumer checkpointListener) {
+        if (checkpointListener != null) {
+            this.checkpointListener = checkpointListener;
+            this.watermark = new OffsetWatermark(source.getOffset());
+            bulkIngester.setCompletionListener(this::onCompleted);
+        }
+        int workers = config.getEffectiveWorkers();
+        rawQueue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        ExecutorService workerPool = Executors.newFixedThreadPool(workers, namedThreads("indexing-worker"));
+        ScheduledExecutorService progressReporter = Executors.newSingleThreadScheduledExecutor(namedThreads("indexing-progress"));
+        long progressIntervalMillis = config.getProgressInterval().toMillis();
+        progressReporter.scheduleAtFixedRate(this::logProgress, progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS);
+
+        log.info("Starting indexing pipeline with {} workers, enrichers {} and {} concurrent bulk requests.",
+                workers, enrichers.stream().map(DocumentEnricher::getName).collect(Collectors.toList()), bulkIngester.getConcurrentRequests());
+        try {
+            for (int i = 0; i < workers; i++) {
+                activeWorkers.incrementAndGet();
+                workerPool.execute(() -> work(requestFactory));
+            }
+
+            read(source);
+            for (int i = 0; i < workers; i++) {
+                put(END_OF_INPUT);
+            }
+
+            workerPool.shutdown();
+            while (!workerPool.awaitTermination(OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    workerPool.shutdownNow();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail(ex);
+        } finally {
+            workerPool.shutdownNow();
+            progressReporter.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Indexing pipeline has been stopped because of an error", failure.get());
+        }
+        logProgress();
+        return readDocuments.get();
+    }
+
+    private void read(DocumentSource source) throws InterruptedException {
+        try {
+            long startOffset = source.getOffset();
+            ByteBuffer element;
+            while (failure.get() == null && (element = source.next()) != null) {
+                readDocuments.incrementAndGet();
+                metrics.onDocumentRead(element.remaining());
+                if (watermark != null) {
+                    watermark.onRead(startOffset, source.getOffset());
+                }
+                put(new RawElement(element, startOffset));
+                startOffset = source.getOffset();
+            }
+        } catch (IOException | RuntimeException ex) {
+            fail(ex);
+        }
+    }
+
+    // Waits for free space in the queue, unless the pipeline has failed in the meantime
+    private void put(RawElement element) throws InterruptedException {
+        while (failure.get() == null) {
+            if (rawQueue.offer(element, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private void work(Function<T, DocWriteRequest<?>> requestFactory) {
+        try {
+            while (failure.get() == null) {
+                RawElement element = rawQueue.poll(OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (element == END_OF_INPUT) {
+                    break;
+                }
+                if (element != null) {
+                    process(element, requestFactory);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            fail(ex);
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    private void process(RawElement element, Function<T, DocWriteRequest<?>> requestFactory) {
+        T document;
+        long parseStartedAt = System.nanoTime();
+        try {
+            document = parser.parse(element.bytes);
+            metrics.onDocumentParsed(System.nanoTime() - parseStartedAt);
+        } catch (IOException ex) {
+            skip(element, "Skipping a document which can not be parsed: {}", ex);
+            return;
+        }
+        try {
+            DocumentEnricher.enrichAll(enrichers, document, metrics);
+        } catch (IOException ex) {
+            skip(element, "Skipping a document which can not be enriched: {}", ex);
+            return;
+        }
+        DocWriteRequest<?> request = requestFactory.apply(document);
+        if (versionByOffset && request instanceof IndexRequest) {
+            // Offsets start from zero, versions from one
+            ((IndexRequest) request).opType(DocWriteRequest.OpType.INDEX)
+                    .version(element.startOffset + 1)
+                    .versionType(VersionType.EXTERNAL_GTE);
+        }
+        if (request != null) {
+            if (watermark != null) {
+                requestOffsets.put(request, element.startOffset);
+            }
+            bulkIngester.add(request);
+        } else {
+            onCompleted(element.startOffset);
+        }
+        processedDocuments.incrementAndGet();
+    }
+
+    private void skip(RawElement element, String message, IOException ex) {
+        skippedDocuments.incrementAndGet();
+        metrics.onDocumentSkipped();
+        log.warn(message, ex.getMessage());
+        onCompleted(element.startOffset);
+    }
+
+    private void onCompleted(long startOffset) {
+        if (watermark != null) {
+            watermark.onCompleted(startOffset);
+        }
+    }
+
+    // Called by the bulk ingester when a bulk is done
+    private void onCompleted(List<DocWriteRequest<?>> requests) {
+        for (DocWriteRequest<?> request : requests) {
+            Long startOffset = requestOffsets.remove(request);
+            if (startOffset != null) {
+                watermark.onCompleted(startOffset);
+            }
+        }
+        synchronized (this) {
+            long checkpoint = watermark.get();
+            if (checkpoint > lastCheckpoint) {
+                lastCheckpoint = checkpoint;
+                checkpointListener.accept(checkpoint);
+            }
+        }
+    }
+
+    private void fail(Exception ex) {
+        if (failure.compareAndSet(null, ex)) {
+            log.error("Indexing pipeline has failed, stopping all stages", ex);
+        }
+    }
+
+    private void logProgress() {
+        log.info("Indexing progress: {} documents read, {} processed, {} skipped, {} sent; parse queue {}/{}, workers {}, bulks in flight {}/{}.",
+                readDocuments.get(), processedDocuments.get(), skippedDocuments.get(), bulkIngester.getSucceededActions() + bulkIngester.getFailedActions(),
+                rawQueue.size(), config.getQueueCapacity(), activeWorkers.get(),
+                bulkIngester.getInFlightRequests(), bulkIngester.getConcurrentRequests());
+    }
+
+    private static class RawElement {
+        private final ByteBuffer bytes;
+        private final long startOffset;
+
+        private RawElement(ByteBuffer bytes, long startOffset) {
+            this.bytes = bytes;
+            this.startOffset = startOffset;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
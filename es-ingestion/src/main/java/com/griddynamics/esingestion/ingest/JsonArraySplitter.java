@@ -0,0 +1,122 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a JSON array into slices with the raw bytes of its elements, without parsing them,
+ * so the actual parsing can be done by other threads.
+ */
+public class JsonArraySplitter implements DocumentSource {
+
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final ByteWindow window;
+    private int position;
+    private boolean started;
+    private boolean finished;
+
+    public JsonArraySplitter(ByteWindow window) {
+        this(window, false);
+    }
+
+    /**
+     * @param insideArray true if the window starts inside the array, e.g. at an offset returned by
+     *                    {@link #getOffset()} in a previous run, rather than at the beginning of the input
+     */
+    public JsonArraySplitter(ByteWindow window, boolean insideArray) {
+        this.window = window;
+        this.started = insideArray;
+    }
+
+    @Override
+    public ByteBuffer next() throws IOException {
+        while (!finished) {
+            ByteBuffer buffer = window.buffer();
+            int limit = buffer.limit();
+            // The first window may end inside the byte order mark
+            int byteOrderMark = byteOrderMarkLength(buffer, limit);
+            if (byteOrderMark > 0 && byteOrderMark == limit && byteOrderMark < BYTE_ORDER_MARK.length && advance(0)) {
+                continue;
+            }
+            int start = skipSeparators(buffer, position, limit);
+            if (start == limit) {
+                if (!advance(start)) {
+                    throw new EOFException(started ? "Unexpected end of the JSON array" : "Bulk data file is empty");
+                }
+                continue;
+            }
+
+            byte first = buffer.get(start);
+            if (!started) {
+                if (first != '[') {
+                    throw new IOException("Bulk data file must contain a JSON array of documents");
+                }
+                started = true;
+                position = start + 1;
+                continue;
+            }
+            if (first == ']') {
+                finished = true;
+                position = start + 1;
+                break;
+            }
+
+            int end = JsonBytes.findValueEnd(buffer, start, limit);
+            if (end < 0) {
+                if (!advance(start)) {
+                    throw new EOFException("Unexpected end of the JSON array");
+                }
+                continue;
+            }
+            position = end;
+            return buffer.duplicate().position(start).limit(end).slice();
+        }
+        return null;
+    }
+
+    @Override
+    public long getOffset() {
+        return window.offset() + position;
+    }
+
+    private int skipSeparators(ByteBuffer buffer, int position, int limit) {
+        if (byteOrderMarkLength(buffer, limit) == BYTE_ORDER_MARK.length) {
+            position = BYTE_ORDER_MARK.length;
+        }
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (!JsonBytes.isWhitespace(b) && !(started && b == ',')) {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    // Number of leading bytes of the window which match the UTF-8 byte order mark at the beginning of the input
+    private int byteOrderMarkLength(ByteBuffer buffer, int limit) {
+        if (started || window.offset() != 0 || position != 0) {
+            return 0;
+        }
+        int length = 0;
+        while (length < BYTE_ORDER_MARK.length && length < limit && buffer.get(length) == BYTE_ORDER_MARK[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private boolean advance(int keepFrom) throws IOException {
+        if (!window.advance(keepFrom)) {
+            return false;
+        }
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window.close();
+    }
+}
@@ -0,0 +1,94 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers which find JSON value boundaries on raw UTF-8 bytes. They track only string, escape and
+ * nesting state and do not validate the JSON, that is left to Elasticsearch.
+ */
+public final class JsonBytes {
+
+    private JsonBytes() {
+    }
+
+    public static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    public static int skipWhitespace(ByteBuffer buffer, int position, int limit) {
+        while (position < limit && isWhitespace(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * @return position right after the value starting at {@code start},
+     * or -1 if the value does not end before {@code limit}
+     */
+    public static int findValueEnd(ByteBuffer buffer, int start, int limit) {
+        byte first = buffer.get(start);
+        if (first == '"') {
+            return findStringEnd(buffer, start, limit);
+        }
+        if (first != '{' && first != '[') {
+            for (int position = start; position < limit; position++) {
+                byte b = buffer.get(position);
+                if (b == ',' || b == '}' || b == ']' || isWhitespace(b)) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int position = start; position < limit; position++) {
+            byte b = buffer.get(position);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return position + 1;
+            }
+        }
+        return -1;
+    }
+
+    public static int findStringEnd(ByteBuffer buffer, int start, int limit) {
+        boolean escaped = false;
+        for (int position = start + 1; position < limit; position++) {
+            byte b = buffer.get(position);
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == '"') {
+                return position + 1;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean equalsAscii(ByteBuffer buffer, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer.get(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-maps a local file window by window, so the file is read straight from the page cache
+ * and files larger than 2 GB can be processed too.
+ */
+public class MappedByteWindow implements ByteWindow {
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private ByteBuffer buffer;
+    private long offset;
+
+    public MappedByteWindow(Path path, int windowSize) throws IOException {
+        this(path, windowSize, 0);
+    }
+
+    /**
+     * @param startOffset offset in the file of the first window
+     */
+    public MappedByteWindow(Path path, int windowSize, long startOffset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        this.offset = Math.min(startOffset, fileSize);
+        this.buffer = map(offset, windowSize);
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public boolean advance(int keepFrom) throws IOException {
+        long end = offset + buffer.limit();
+        if (end >= fileSize) {
+            return false;
+        }
+        long newOffset = offset + keepFrom;
+        // A record which does not fit into the window makes the next window bigger
+        long kept = end - newOffset;
+        int size = (int) Math.min(Integer.MAX_VALUE, Math.max(windowSize, 2 * kept));
+        buffer = map(newOffset, size);
+        offset = newOffset;
+        return true;
+    }
+
+    private ByteBuffer map(long position, int size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size, fileSize - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,63 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits newline delimited input (e.g. the _bulk format) into slices with the raw bytes of its lines.
+ * Empty lines are skipped and line terminators are not included.
+ */
+public class NdjsonLineSplitter implements DocumentSource {
+
+    private final ByteWindow window;
+    private int position;
+
+    public NdjsonLineSplitter(ByteWindow window) {
+        this.window = window;
+    }
+
+    @Override
+    public ByteBuffer next() throws IOException {
+        while (true) {
+            ByteBuffer buffer = window.buffer();
+            int limit = buffer.limit();
+            // Leading whitespace includes empty lines
+            int start = JsonBytes.skipWhitespace(buffer, position, limit);
+            int end = indexOfNewLine(buffer, start, limit);
+            if (end < 0) {
+                if (window.advance(start)) {
+                    position = 0;
+                    continue;
+                }
+                if (start == limit) {
+                    position = limit;
+                    return null;
+                }
+                // The last line has no line terminator
+                end = limit;
+            }
+            position = end < limit ? end + 1 : limit;
+            int lineEnd = buffer.get(end - 1) == '\r' ? end - 1 : end;
+            return buffer.duplicate().position(start).limit(lineEnd).slice();
+        }
+    }
+
+    private static int indexOfNewLine(ByteBuffer buffer, int start, int limit) {
+        for (int position = start; position < limit; position++) {
+            if (buffer.get(position) == '\n') {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long getOffset() {
+        return window.offset() + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window.close();
+    }
+}
@@ -0,0 +1,30 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.util.TreeSet;
+
+/**
+ * Low watermark of an input: the offset before which every document which has been read is done.
+ * Documents are registered by their start offsets in reading order and may be completed in any order.
+ */
+public class OffsetWatermark {
+
+    private final TreeSet<Long> pending = new TreeSet<>();
+    private long readOffset;
+
+    public OffsetWatermark(long startOffset) {
+        this.readOffset = startOffset;
+    }
+
+    public synchronized void onRead(long startOffset, long endOffset) {
+        pending.add(startOffset);
+        readOffset = endOffset;
+    }
+
+    public synchronized void onCompleted(long startOffset) {
+        pending.remove(startOffset);
+    }
+
+    public synchronized long get() {
+        return pending.isEmpty() ? readOffset : pending.first();
+    }
+}
@@ -0,0 +1,66 @@
+package com.griddynamics.esingestion.ingest;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * NDJSON body of a _bulk request made of raw action/source pairs, which are written to the connection
+ * as they are, each followed by a line terminator. The pairs may be slices of a memory-mapped file.
+ */
+class RawBulkRequestBody extends AbstractHttpEntity {
+
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+
+    private final List<ByteBuffer> pairs;
+    private final long length;
+
+    RawBulkRequestBody(List<ByteBuffer> pairs) {
+        setContentType(NDJSON.toString());
+        this.pairs = pairs;
+        this.length = pairs.stream().mapToLong(pair -> pair.remaining() + 1).sum();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE));
+        writeTo(content);
+        return new ByteArrayInputStream(content.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(outputStream);
+        for (ByteBuffer pair : pairs) {
+            ByteBuffer bytes = pair.duplicate();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            outputStream.write('\n');
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
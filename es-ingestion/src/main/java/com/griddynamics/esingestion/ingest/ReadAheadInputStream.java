@@ -0,0 +1,108 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads an input stream ahead on a dedicated thread into a bounded queue of chunks, so that an expensive
+ * source, e.g. a decompressor, works at the same time as the consumer instead of taking turns with it.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final byte[] END_OF_INPUT = new byte[0];
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread readerThread;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean finished;
+
+    public ReadAheadInputStream(InputStream source, int chunkSize, int queueCapacity, String threadName) {
+        this.chunks = new ArrayBlockingQueue<>(queueCapacity);
+        this.readerThread = new Thread(() -> readAhead(source, chunkSize), threadName);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void readAhead(InputStream source, int chunkSize) {
+        try (InputStream input = source) {
+            while (!closed) {
+                byte[] next = new byte[chunkSize];
+                int read = input.readNBytes(next, 0, chunkSize);
+                if (read > 0) {
+                    put(read < chunkSize ? Arrays.copyOf(next, read) : next);
+                }
+                if (read < chunkSize) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (InterruptedException ex) {
+            return;
+        }
+        try {
+            put(END_OF_INPUT);
+        } catch (InterruptedException ex) {
+            // Closed by the consumer
+        }
+    }
+
+    private void put(byte[] next) throws InterruptedException {
+        while (!closed) {
+            if (chunks.offer(next, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == chunk.length) {
+            if (finished) {
+                return -1;
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for input", ex);
+            }
+            position = 0;
+            if (chunk == END_OF_INPUT) {
+                finished = true;
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+        int read = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        readerThread.interrupt();
+        chunks.clear();
+    }
+}
@@ -0,0 +1,66 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sort keys which order documents exactly like their ids. The key is the "_id" itself, written to a keyword field
+ * which has doc values only, so it is unique, every id can be represented and sorting on it keeps the order of _id.
+ * Sorting on the key reads the doc values, while sorting on _id loads every id into fielddata on the heap.
+ */
+public final class SortKeys {
+
+    public static final String SORT_KEY_FIELD = "sortKey";
+
+    private static final JsonStringEncoder jsonStringEncoder = JsonStringEncoder.getInstance();
+
+    private SortKeys() {
+    }
+
+    /**
+     * @param id value of the "_id" of the document
+     * @return the key as a JSON string
+     */
+    public static String toJson(String id) {
+        return "\"" + new String(jsonStringEncoder.quoteAsString(id)) + "\"";
+    }
+
+    /**
+     * @param source JSON object, its bytes are not changed
+     * @param id     value of the "_id" of the document
+     * @return the source with the sort key of the id as its last field
+     */
+    public static byte[] appendTo(ByteBuffer source, String id) throws IOException {
+        return appendJsonTo(source, toJson(id));
+    }
+
+    /**
+     * @param source JSON object, its bytes are not changed
+     * @param idJson JSON value of the "_id" as it is in an action line, a string is used without decoding it
+     * @return the source with the sort key of the id as its last field
+     */
+    public static byte[] appendJsonTo(ByteBuffer source, String idJson) throws IOException {
+        int closing = source.limit() - 1;
+        while (closing > 0 && JsonBytes.isWhitespace(source.get(closing))) {
+            closing--;
+        }
+        int last = closing - 1;
+        while (last >= 0 && JsonBytes.isWhitespace(source.get(last))) {
+            last--;
+        }
+        if (last < 0 || source.get(closing) != '}') {
+            throw new IOException("Source must be a JSON object");
+        }
+
+        String key = idJson.startsWith("\"") ? idJson : toJson(idJson);
+        byte[] member = ((source.get(last) == '{' ? "" : ",") + "\"" + SORT_KEY_FIELD + "\":" + key + "}")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[closing + member.length];
+        source.duplicate().position(0).get(result, 0, closing);
+        System.arraycopy(member, 0, result, closing, member.length);
+        return result;
+    }
+}
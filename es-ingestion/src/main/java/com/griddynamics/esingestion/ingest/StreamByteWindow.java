@@ -0,0 +1,69 @@
+package com.griddynamics.esingestion.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads an input stream chunk by chunk. Every chunk is a new array, so slices of previous chunks
+ * are never overwritten.
+ */
+public class StreamByteWindow implements ByteWindow {
+
+    private final InputStream inputStream;
+    private final int chunkSize;
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private long offset;
+
+    public StreamByteWindow(InputStream inputStream, int chunkSize) throws IOException {
+        this(inputStream, chunkSize, 0);
+    }
+
+    /**
+     * @param startOffset number of bytes of the stream to skip before the first chunk
+     */
+    public StreamByteWindow(InputStream inputStream, int chunkSize, long startOffset) throws IOException {
+        this.inputStream = inputStream;
+        this.chunkSize = chunkSize;
+        while (offset < startOffset) {
+            long skipped = inputStream.skip(startOffset - offset);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0) {
+                    break;
+                }
+                skipped = 1;
+            }
+            offset += skipped;
+        }
+        advance(0);
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public boolean advance(int keepFrom) throws IOException {
+        int kept = buffer.limit() - keepFrom;
+        byte[] chunk = new byte[Math.max(chunkSize, 2 * kept)];
+        buffer.duplicate().position(keepFrom).get(chunk, 0, kept);
+        int read = inputStream.readNBytes(chunk, kept, chunk.length - kept);
+        if (read <= 0) {
+            return false;
+        }
+        buffer = ByteBuffer.wrap(chunk, 0, kept + read).slice();
+        offset += keepFrom;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,168 @@
+package com.griddynamics.esingestion.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters of an indexing run. They are updated while the run goes on, so they can be watched
+ * through the metrics endpoint, and are summarized by {@link #report()} when it is over.
+ */
+public class IndexingMetrics {
+
+    public static final String PHASE_CREATE_INDEX = "create_index";
+    public static final String PHASE_LOAD = "load";
+    public static final String PHASE_PREPARE_SERVING = "prepare_serving";
+    public static final String PHASE_FACET_SNAPSHOT = "facet_snapshot";
+    public static final String PHASE_WARM_UP = "warm_up";
+    public static final String PHASE_ALIAS_SWAP = "alias_swap";
+    public static final String PHASE_CLEANUP = "cleanup";
+    public static final String PHASE_SNAPSHOT = "snapshot";
+    public static final String PHASE_RESTORE = "restore";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+    private final Counter documentsRead;
+    private final Counter bytesRead;
+    private final Counter documentsSkipped;
+    private final Counter documentsDuplicate;
+    private final Counter itemsSucceeded;
+    private final Counter itemsFailed;
+    private final Counter itemsRejected;
+    private final Counter itemsRetried;
+    private final Timer parseTime;
+    private final Timer bulkLatency;
+    private final Timer bulkTook;
+    private final Map<String, Timer> phases = new LinkedHashMap<>();
+    private final Map<String, Timer> enrichTimes = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+    private volatile String index;
+
+    public IndexingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        documentsRead = registry.counter("indexer.documents.read");
+        bytesRead = Counter.builder("indexer.bytes.read").baseUnit("bytes").register(registry);
+        documentsSkipped = registry.counter("indexer.documents.skipped");
+        documentsDuplicate = registry.counter("indexer.documents.duplicate");
+        itemsSucceeded = registry.counter("indexer.bulk.items", "result", "succeeded");
+        itemsFailed = registry.counter("indexer.bulk.items", "result", "failed");
+        itemsRejected = registry.counter("indexer.bulk.items", "result", "rejected");
+        itemsRetried = registry.counter("indexer.bulk.items", "result", "retried");
+        parseTime = registry.timer("indexer.parse");
+        bulkLatency = Timer.builder("indexer.bulk.latency")
+                .description("Time from sending a bulk request to receiving its response")
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry);
+        bulkTook = Timer.builder("indexer.bulk.took")
+                .description("Time Elasticsearch reports it has spent on a bulk request")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public void onDocumentRead(int bytes) {
+        documentsRead.increment();
+        bytesRead.increment(bytes);
+    }
+
+    public void onDocumentParsed(long parseNanos) {
+        parseTime.record(parseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void onDocumentEnriched(String enricher, long enrichNanos) {
+        enrichTimes.computeIfAbsent(enricher, name -> registry.timer("indexer.enrich", "enricher", name))
+                .record(enrichNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void onDocumentSkipped() {
+        documentsSkipped.increment();
+    }
+
+    public void onDuplicateId() {
+        documentsDuplicate.increment();
+    }
+
+    public void onBulkCompleted(long latencyNanos, long tookMillis, int succeeded, int rejected, int retried) {
+        bulkLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        bulkTook.record(tookMillis, TimeUnit.MILLISECONDS);
+        itemsSucceeded.increment(succeeded);
+        itemsRejected.increment(rejected);
+        itemsRetried.increment(retried);
+    }
+
+    public void onBulkFailed(long latencyNanos) {
+        bulkLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void onItemFailed() {
+        itemsFailed.increment();
+    }
+
+    public void timePhase(String phase, Runnable action) {
+        phaseTimer(phase).record(action);
+    }
+
+    public <T> T timePhase(String phase, Supplier<T> action) {
+        return phaseTimer(phase).record(action);
+    }
+
+    private synchronized Timer phaseTimer(String phase) {
+        return phases.computeIfAbsent(phase, name -> registry.timer("indexer.phase", "phase", name));
+    }
+
+    public synchronized IndexingReport report() {
+        IndexingReport report = new IndexingReport();
+        report.setIndex(index);
+        report.setStartedAt(startedAt);
+        report.setDurationMillis(System.currentTimeMillis() - startedAt);
+        phases.forEach((phase, timer) -> report.getPhaseMillis().put(phase, (long) timer.totalTime(TimeUnit.MILLISECONDS)));
+
+        report.setDocumentsRead((long) documentsRead.count());
+        report.setBytesRead((long) bytesRead.count());
+        report.setDocumentsSkipped((long) documentsSkipped.count());
+        report.setDocumentsDuplicate((long) documentsDuplicate.count());
+        report.setItemsSucceeded((long) itemsSucceeded.count());
+        report.setItemsFailed((long) itemsFailed.count());
+        report.setItemsRejected((long) itemsRejected.count());
+        report.setItemsRetried((long) itemsRetried.count());
+
+        Timer load = phases.get(PHASE_LOAD);
+        double loadSeconds = load != null ? load.totalTime(TimeUnit.SECONDS) : 0;
+        if (loadSeconds > 0) {
+            report.setDocumentsPerSecond(documentsRead.count() / loadSeconds);
+            report.setBytesPerSecond(bytesRead.count() / loadSeconds);
+        }
+
+        // Parse and enrich times are summed over all workers, bulk times over all concurrent requests
+        report.setParseMillis((long) parseTime.totalTime(TimeUnit.MILLISECONDS));
+        enrichTimes.forEach((enricher, timer) -> report.getEnrichMillis().put(enricher, (long) timer.totalTime(TimeUnit.MILLISECONDS)));
+        report.setBulkRequests(bulkLatency.count());
+        report.setBulkLatencyMillis(summarize(bulkLatency.takeSnapshot()));
+        report.setBulkTookMillis(summarize(bulkTook.takeSnapshot()));
+        return report;
+    }
+
+    private static Map<String, Double> summarize(HistogramSnapshot snapshot) {
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put("total", snapshot.total(TimeUnit.MILLISECONDS));
+        summary.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+        summary.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return summary;
+    }
+}
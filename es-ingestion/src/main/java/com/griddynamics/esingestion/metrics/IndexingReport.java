@@ -0,0 +1,39 @@
+package com.griddynamics.esingestion.metrics;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Machine-readable summary of an indexing run, written as JSON when the run is over.
+ * Times are in milliseconds.
+ */
+@Data
+public class IndexingReport {
+    private String index;
+    private String mode;
+    private String outcome;
+    private String error;
+    private long startedAt;
+    private long durationMillis;
+    private Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+    private long documentsRead;
+    private long bytesRead;
+    private long documentsSkipped;
+    private long documentsDuplicate;
+    private double documentsPerSecond;
+    private double bytesPerSecond;
+
+    private long itemsSucceeded;
+    private long itemsFailed;
+    private long itemsRejected;
+    private long itemsRetried;
+
+    private long parseMillis;
+    private Map<String, Long> enrichMillis = new LinkedHashMap<>();
+    private long bulkRequests;
+    private Map<String, Double> bulkLatencyMillis;
+    private Map<String, Double> bulkTookMillis;
+}
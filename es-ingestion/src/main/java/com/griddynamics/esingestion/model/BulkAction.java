@@ -0,0 +1,45 @@
+package com.griddynamics.esingestion.model;
+
+import com.griddynamics.esingestion.ingest.SortKeys;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An index or create action of the _bulk format together with its source, which is kept as raw bytes.
+ */
+@Data
+@AllArgsConstructor
+public class BulkAction {
+    private DocWriteRequest.OpType opType;
+    // Null if the action line has no _index, the document then goes to the index being built
+    private String index;
+    private String id;
+    private BytesReference source;
+
+    /**
+     * Appends the {@link SortKeys sort key} of the id to the source, actions without an id are left as they are.
+     */
+    public BulkAction withSortKey() throws IOException {
+        if (id != null) {
+            BytesRef bytes = source.toBytesRef();
+            source = new BytesArray(SortKeys.appendTo(ByteBuffer.wrap(bytes.bytes, bytes.offset, bytes.length).slice(), id));
+        }
+        return this;
+    }
+
+    public IndexRequest toIndexRequest(String defaultIndex) {
+        return new IndexRequest(index != null ? index : defaultIndex)
+                .id(id)
+                .opType(opType)
+                .source(source, XContentType.JSON);
+    }
+}
@@ -0,0 +1,13 @@
+package com.griddynamics.esingestion.model;
+
+/**
+ * What happens to a document whose id has already been read in the same run.
+ */
+public enum DuplicatePolicy {
+    // The first document with the id is indexed, the later ones are dropped
+    FIRST_WINS,
+    // Every document with the id is sent and the one read last ends up in the index
+    LAST_WINS,
+    // The first document with the id is indexed, the later ones are reported as failed documents
+    REJECT
+}
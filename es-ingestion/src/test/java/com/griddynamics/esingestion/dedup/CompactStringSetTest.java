@@ -0,0 +1,68 @@
+package com.griddynamics.esingestion.dedup;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CompactStringSetTest {
+
+    @Test
+    public void testAdd() {
+        CompactStringSet set = new CompactStringSet();
+        assertTrue(set.add("\"abc\""));
+        assertTrue(set.add("abc"));
+        assertTrue(set.add(""));
+        assertTrue(set.add("\"ünïcödé\""));
+        assertFalse(set.add("\"abc\""));
+        assertFalse(set.add("abc"));
+        assertFalse(set.add(""));
+        assertFalse(set.add("\"ünïcödé\""));
+        assertEquals(4, set.size());
+    }
+
+    @Test
+    public void testAddNew() {
+        CompactStringSet set = new CompactStringSet();
+        set.addNew("a");
+        set.addNew("b");
+        assertFalse(set.add("a"));
+        assertFalse(set.add("b"));
+        assertTrue(set.add("c"));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testGrowAcrossChunks() {
+        CompactStringSet set = new CompactStringSet();
+        int count = 300_000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(set.add("\"sku-" + i + "\""));
+        }
+        assertEquals(count, set.size());
+        for (int i = 0; i < count; i++) {
+            assertFalse(set.add("\"sku-" + i + "\""));
+        }
+    }
+
+    @Test
+    public void testLongValues() {
+        CompactStringSet set = new CompactStringSet();
+        char[] chars = new char[60_000];
+        for (char c = 'a'; c <= 'z'; c++) {
+            Arrays.fill(chars, c);
+            assertTrue(set.add(new String(chars)));
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            Arrays.fill(chars, c);
+            assertFalse(set.add(new String(chars)));
+        }
+        assertEquals(26, set.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLongValue() {
+        new CompactStringSet().add(new String(new char[1 << 16]));
+    }
+}
@@ -0,0 +1,47 @@
+package com.griddynamics.esingestion.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testAdd() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(1));
+        assertTrue(set.add(-1));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(1));
+        assertFalse(set.add(-1));
+        assertFalse(set.add(Long.MAX_VALUE));
+        assertFalse(set.add(Long.MIN_VALUE));
+        assertEquals(4, set.size());
+    }
+
+    @Test
+    public void testZero() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertEquals(1, set.size());
+        assertTrue(set.add(1));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testGrow() {
+        LongHashSet set = new LongHashSet();
+        int count = 500_000;
+        for (long i = 0; i < count; i++) {
+            assertTrue(set.add(i * 65536));
+        }
+        assertEquals(count, set.size());
+        for (long i = 0; i < count; i++) {
+            assertFalse(set.add(i * 65536));
+        }
+        assertTrue(set.add(1));
+        assertEquals(count + 1, set.size());
+    }
+}
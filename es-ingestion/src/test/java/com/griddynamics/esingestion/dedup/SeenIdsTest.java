@@ -0,0 +1,63 @@
+package com.griddynamics.esingestion.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SeenIdsTest {
+
+    @Test
+    public void testNumericIds() {
+        SeenIds seenIds = new SeenIds(1000, 0.01);
+        assertTrue(seenIds.add("1"));
+        assertTrue(seenIds.add("0"));
+        assertTrue(seenIds.add("\"0\""));
+        assertFalse(seenIds.add("1"));
+        assertFalse(seenIds.add("0"));
+        assertFalse(seenIds.add("\"0\""));
+        assertEquals(3, seenIds.size());
+    }
+
+    @Test
+    public void testQuotedAndBareIdsDiffer() {
+        SeenIds seenIds = new SeenIds(1000, 0.01);
+        assertTrue(seenIds.add("123"));
+        assertTrue(seenIds.add("\"123\""));
+        assertFalse(seenIds.add("123"));
+        assertFalse(seenIds.add("\"123\""));
+        assertEquals(2, seenIds.size());
+    }
+
+    @Test
+    public void testNonNumericIds() {
+        SeenIds seenIds = new SeenIds(1000, 0.01);
+        String[] ids = {"\"abc\"", "abc", "\"007\"", "007", "\"-1\"", "-1", "\"1.5\"", "\"\"",
+                "\"1234567890123456789\"", "\"12345678901234567890\""};
+        for (String id : ids) {
+            assertTrue(id, seenIds.add(id));
+        }
+        for (String id : ids) {
+            assertFalse(id, seenIds.add(id));
+        }
+        assertEquals(ids.length, seenIds.size());
+        // Leading zeros are kept, so these do not collide with the numeric ids
+        assertTrue(seenIds.add("\"7\""));
+        assertTrue(seenIds.add("7"));
+    }
+
+    @Test
+    public void testManyIdsWithFalsePositives() {
+        // A tiny filter reports most new ids as seen, they must still be added
+        SeenIds seenIds = new SeenIds(10, 0.5);
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(seenIds.add("\"id-" + i + "\""));
+            assertTrue(seenIds.add(Integer.toString(i)));
+        }
+        assertEquals(2L * count, seenIds.size());
+        for (int i = 0; i < count; i++) {
+            assertFalse(seenIds.add("\"id-" + i + "\""));
+            assertFalse(seenIds.add(Integer.toString(i)));
+        }
+    }
+}
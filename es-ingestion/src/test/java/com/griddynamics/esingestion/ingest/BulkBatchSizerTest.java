@@ -0,0 +1,97 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class BulkBatchSizerTest {
+
+    private static BulkConfig config(int initialActions, int minActions, int maxActions) {
+        BulkConfig config = new BulkConfig();
+        config.setInitialActions(initialActions);
+        config.setMinActions(minActions);
+        config.setMaxActions(maxActions);
+        config.setTargetTook(Duration.ofMillis(1000));
+        config.setMaxRejectionRate(0.01);
+        return config;
+    }
+
+    @Test
+    public void testInitialSizeIsBounded() {
+        assertEquals(500, new BulkBatchSizer(config(500, 100, 1000)).getBatchSize());
+        assertEquals(100, new BulkBatchSizer(config(10, 100, 1000)).getBatchSize());
+        assertEquals(1000, new BulkBatchSizer(config(5000, 100, 1000)).getBatchSize());
+        assertEquals(1, new BulkBatchSizer(config(0, 0, 0)).getBatchSize());
+    }
+
+    @Test
+    public void testGrowsAfterFullFastBulks() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(500, 100, 1000));
+        sizer.onBulkCompleted(500, 200, 0);
+        assertEquals(600, sizer.getBatchSize());
+        sizer.onBulkCompleted(600, 1000, 0);
+        assertEquals(720, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testGrowsUpToMax() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(900, 100, 1000));
+        sizer.onBulkCompleted(900, 100, 0);
+        assertEquals(1000, sizer.getBatchSize());
+        sizer.onBulkCompleted(1000, 100, 0);
+        assertEquals(1000, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testGrowsByAtLeastOne() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(3, 1, 10));
+        sizer.onBulkCompleted(3, 10, 0);
+        assertEquals(4, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testKeepsSizeAfterPartialBulks() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(500, 100, 1000));
+        sizer.onBulkCompleted(499, 10, 0);
+        assertEquals(500, sizer.getBatchSize());
+        sizer.onBulkCompleted(0, 0, 0);
+        assertEquals(500, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksSlowBulks() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(800, 100, 1000));
+        sizer.onBulkCompleted(800, 1001, 0);
+        assertEquals(600, sizer.getBatchSize());
+        sizer.onBulkCompleted(600, 2000, 0);
+        assertEquals(450, sizer.getBatchSize());
+        sizer.onBulkCompleted(450, 2001, 0);
+        assertEquals(225, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testHalvesOnRejections() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(800, 100, 1000));
+        // Exactly the max rate of rejections is still fine
+        sizer.onBulkCompleted(800, 10, 8);
+        assertEquals(960, sizer.getBatchSize());
+        sizer.onBulkCompleted(960, 10, 10);
+        assertEquals(480, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksDownToMin() {
+        BulkBatchSizer sizer = new BulkBatchSizer(config(300, 100, 1000));
+        sizer.onBulkFailed();
+        assertEquals(150, sizer.getBatchSize());
+        sizer.onBulkFailed();
+        assertEquals(100, sizer.getBatchSize());
+        sizer.onBulkCompleted(100, 1500, 0);
+        assertEquals(100, sizer.getBatchSize());
+        sizer.onBulkCompleted(100, 5000, 100);
+        assertEquals(100, sizer.getBatchSize());
+    }
+}
@@ -0,0 +1,186 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class BulkIngesterTest {
+
+    private static final int ACTIONS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path deadLetterFile;
+
+    private BulkIngester ingester(StubBulkServer server, int maxRetries, long initialBackoffMillis) throws IOException {
+        BulkConfig config = new BulkConfig();
+        config.setInitialActions(ACTIONS);
+        config.setMinActions(ACTIONS);
+        config.setMaxActions(ACTIONS);
+        config.setConcurrentRequests(1);
+        config.setFlushInterval(Duration.ofHours(1));
+        FailureHandlingConfig failureConfig = new FailureHandlingConfig();
+        failureConfig.setMaxRetries(maxRetries);
+        failureConfig.setInitialBackoff(Duration.ofMillis(initialBackoffMillis));
+        failureConfig.setMaxBackoff(Duration.ofSeconds(10));
+        deadLetterFile = folder.getRoot().toPath().resolve("dead-letter.ndjson");
+        failureConfig.setDeadLetterFile(deadLetterFile.toString());
+        return new BulkIngester(server.getClient(), config, failureConfig, new IndexingMetrics(new SimpleMeterRegistry()));
+    }
+
+    // Sends one full bulk of documents {"n":0} to {"n":3} and waits for it, including its retries
+    private static List<String> indexAll(BulkIngester ingester) {
+        List<String> completed = Collections.synchronizedList(new ArrayList<>());
+        ingester.setCompletionListener(requests -> requests.forEach(request -> completed.add(request.id())));
+        for (int i = 0; i < ACTIONS; i++) {
+            ingester.add(new IndexRequest("products").id(Integer.toString(i)).source("{\"n\":" + i + "}", XContentType.JSON));
+        }
+        ingester.close();
+        return completed;
+    }
+
+    private List<String> deadLetters() throws IOException {
+        return Files.exists(deadLetterFile) ? Files.readAllLines(deadLetterFile) : Collections.emptyList();
+    }
+
+    @Test
+    public void testRetriesRejectedItems() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) ->
+                call == 1 && (source.contains("\"n\":1") || source.contains("\"n\":3")) ? 429 : 201)) {
+            BulkIngester ingester = ingester(server, 5, 1);
+            List<String> completed = indexAll(ingester);
+
+            List<String> bodies = server.getBodies();
+            assertEquals(2, bodies.size());
+            assertEquals(Arrays.asList("{\"n\":1}", "{\"n\":3}"), sources(bodies.get(1)));
+            assertEquals(ACTIONS, ingester.getSucceededActions());
+            assertEquals(2, ingester.getRejectedActions());
+            assertEquals(2, ingester.getRetriedActions());
+            assertEquals(0, ingester.getFailedActions());
+            // Rejected items are completed by their retry only
+            assertEquals(Arrays.asList("0", "2", "1", "3"), completed);
+            assertTrue(deadLetters().isEmpty());
+        }
+    }
+
+    @Test
+    public void testDeadLettersAfterMaxRetries() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> source.contains("\"n\":2") ? 429 : 201)) {
+            BulkIngester ingester = ingester(server, 2, 1);
+            List<String> completed = indexAll(ingester);
+
+            assertEquals(3, server.getBodies().size());
+            assertEquals(ACTIONS - 1, ingester.getSucceededActions());
+            assertEquals(1, ingester.getFailedActions());
+            assertEquals(3, ingester.getRejectedActions());
+            assertEquals(2, ingester.getRetriedActions());
+            assertEquals(ACTIONS, completed.size());
+            List<String> deadLetters = deadLetters();
+            assertEquals(1, deadLetters.size());
+            assertTrue(deadLetters.get(0), deadLetters.get(0).contains("\"id\":\"2\""));
+            assertTrue(deadLetters.get(0), deadLetters.get(0).contains("\"status\":429"));
+            assertTrue(deadLetters.get(0), deadLetters.get(0).contains("\"source\":{\"n\":2}"));
+        }
+    }
+
+    @Test
+    public void testPermanentFailuresAreNotRetried() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> source.contains("\"n\":0") ? 400 : 201)) {
+            BulkIngester ingester = ingester(server, 5, 1);
+            List<String> completed = indexAll(ingester);
+
+            assertEquals(1, server.getBodies().size());
+            assertEquals(ACTIONS - 1, ingester.getSucceededActions());
+            assertEquals(1, ingester.getFailedActions());
+            assertEquals(0, ingester.getRetriedActions());
+            assertEquals(ACTIONS, completed.size());
+            List<String> deadLetters = deadLetters();
+            assertEquals(1, deadLetters.size());
+            assertTrue(deadLetters.get(0), deadLetters.get(0).contains("\"status\":400"));
+        }
+    }
+
+    @Test
+    public void testBackoffGrowsWithAttempts() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> 429)) {
+            BulkIngester ingester = ingester(server, 2, 200);
+            indexAll(ingester);
+
+            List<Long> callNanos = server.getCallNanos();
+            assertEquals(3, callNanos.size());
+            // Half of the backoff is fixed: at least 100 ms before the first retry and 200 ms before the second one
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(callNanos.get(1) - callNanos.get(0)) >= 100);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(callNanos.get(2) - callNanos.get(1)) >= 200);
+            assertEquals(ACTIONS, ingester.getFailedActions());
+            assertEquals(ACTIONS, deadLetters().size());
+        }
+    }
+
+    @Test
+    public void testExpectedVersionConflictsAreSuperseded() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> source.contains("\"n\":1") ? 409 : 201)) {
+            BulkIngester ingester = ingester(server, 5, 1);
+            ingester.setVersionConflictsExpected(true);
+            List<String> completed = indexAll(ingester);
+
+            assertEquals(ACTIONS, ingester.getSucceededActions());
+            assertEquals(1, ingester.getSupersededActions());
+            assertEquals(0, ingester.getFailedActions());
+            assertEquals(ACTIONS, completed.size());
+            assertTrue(deadLetters().isEmpty());
+        }
+    }
+
+    @Test
+    public void testUnexpectedVersionConflictsFail() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> source.contains("\"n\":1") ? 409 : 201)) {
+            BulkIngester ingester = ingester(server, 5, 1);
+            indexAll(ingester);
+
+            assertEquals(0, ingester.getSupersededActions());
+            assertEquals(1, ingester.getFailedActions());
+            assertEquals(1, deadLetters().size());
+        }
+    }
+
+    @Test
+    public void testDeletesHaveNoSource() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> 200)) {
+            BulkIngester ingester = ingester(server, 5, 1);
+            ingester.add(new DeleteRequest("products", "7"));
+            ingester.close();
+
+            List<String> bodies = server.getBodies();
+            assertEquals(1, bodies.size());
+            assertEquals(1, bodies.get(0).split("\n").length);
+            assertEquals(1, ingester.getSucceededActions());
+        }
+    }
+
+    private static List<String> sources(String body) {
+        return Arrays.stream(body.split("\n"))
+                .filter(line -> line.startsWith("{\"n\""))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,114 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkPassthroughLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path deadLetterFile;
+
+    // Loads the lines with sort keys enabled or not, returns the lines which have been sent
+    private List<String> load(StubBulkServer server, boolean addSortKeys, String... lines) throws IOException {
+        Path data = folder.newFile().toPath();
+        Files.write(data, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        deadLetterFile = folder.getRoot().toPath().resolve("dead-letter.ndjson");
+        FailureHandlingConfig failureConfig = new FailureHandlingConfig();
+        failureConfig.setDeadLetterFile(deadLetterFile.toString());
+        try (BulkActionSplitter pairs = new BulkActionSplitter(ByteWindows.open(new FileSystemResource(data.toFile()), 0));
+             BulkPassthroughLoader loader = new BulkPassthroughLoader(server.getClient(), "products", new BulkConfig(),
+                     failureConfig, new IndexingMetrics(new SimpleMeterRegistry()))) {
+            loader.setAddSortKeys(addSortKeys);
+            loader.load(pairs);
+        }
+        List<String> bodies = server.getBodies();
+        assertEquals(1, bodies.size());
+        return Arrays.asList(bodies.get(0).split("\n"));
+    }
+
+    @Test
+    public void testPairsAreSentAsTheyAre() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> 201)) {
+            List<String> sent = load(server, false,
+                    "{ \"index\" : { \"_id\" : \"1\" } }", "{\"name\":\"a\"}",
+                    "{\"delete\":{\"_id\":\"2\"}}",
+                    "{\"create\":{}}", "{\"name\":\"c\"}");
+            assertEquals(Arrays.asList("{ \"index\" : { \"_id\" : \"1\" } }", "{\"name\":\"a\"}",
+                    "{\"delete\":{\"_id\":\"2\"}}",
+                    "{\"create\":{}}", "{\"name\":\"c\"}"), sent);
+        }
+    }
+
+    @Test
+    public void testIndexIsReplacedByTarget() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> 201)) {
+            List<String> sent = load(server, false,
+                    "{ \"index\" : { \"_index\" : \"old\", \"routing\" : \"x,}\", \"_id\" : 3 } }", "{\"name\":\"a\"}",
+                    "{\"delete\":{\"_index\":\"old\",\"_id\":\"2\"}}");
+            assertEquals(Arrays.asList("{\"index\":{\"_index\":\"products\",\"routing\":\"x,}\",\"_id\":3}}", "{\"name\":\"a\"}",
+                    "{\"delete\":{\"_index\":\"products\",\"_id\":\"2\"}}"), sent);
+        }
+    }
+
+    @Test
+    public void testSortKeysOfIds() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> 201)) {
+            List<String> sent = load(server, true,
+                    "{\"index\":{\"_id\":\"A-1\"}}", "{\"name\":\"a\"}",
+                    "{ \"create\" : { \"_id\" : 3 } }", "{}",
+                    "{\"index\":{\"_index\":\"old\",\"_id\":\"x\\\"y\"}}", "{\"name\":\"b\"} ",
+                    "{\"index\":{}}", "{\"name\":\"c\"}",
+                    "{\"delete\":{\"_id\":\"2\"}}");
+            assertEquals(Arrays.asList("{\"index\":{\"_id\":\"A-1\"}}", "{\"name\":\"a\",\"sortKey\":\"A-1\"}",
+                    "{ \"create\" : { \"_id\" : 3 } }", "{\"sortKey\":\"3\"}",
+                    "{\"index\":{\"_index\":\"products\",\"_id\":\"x\\\"y\"}}", "{\"name\":\"b\",\"sortKey\":\"x\\\"y\"}",
+                    // Ids generated by the cluster have no key
+                    "{\"index\":{}}", "{\"name\":\"c\"}",
+                    "{\"delete\":{\"_id\":\"2\"}}"), sent);
+        }
+    }
+
+    @Test
+    public void testUpdatesHaveNoSortKey() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> 200)) {
+            List<String> sent = load(server, true,
+                    "{\"update\":{\"_id\":\"1\"}}", "{\"doc\":{\"name\":\"a\"}}",
+                    "{ \"update\" : { \"_index\" : \"old\", \"_id\" : 2 } }", "{\"script\":{\"source\":\"ctx._source.n++\"}}",
+                    "{\"index\":{\"_id\":\"3\"}}", "{\"name\":\"c\"}");
+            assertEquals(Arrays.asList("{\"update\":{\"_id\":\"1\"}}", "{\"doc\":{\"name\":\"a\"}}",
+                    "{\"update\":{\"_index\":\"products\",\"_id\":2}}", "{\"script\":{\"source\":\"ctx._source.n++\"}}",
+                    "{\"index\":{\"_id\":\"3\"}}", "{\"name\":\"c\",\"sortKey\":\"3\"}"), sent);
+        }
+    }
+
+    @Test
+    public void testFailedPairsAreDeadLettered() throws IOException {
+        try (StubBulkServer server = new StubBulkServer((call, action, source) -> source != null && source.contains("bad") ? 400 : 201)) {
+            load(server, false,
+                    "{\"index\":{\"_id\":\"1\"}}", "{\"name\":\"a\"}",
+                    "{\"index\":{\"_id\":\"2\"}}", "{\"name\":\"bad\"}",
+                    "{\"delete\":{\"_id\":\"3\"}}");
+            List<String> deadLetters = Files.readAllLines(deadLetterFile);
+            assertEquals(1, deadLetters.size());
+            assertTrue(deadLetters.get(0), deadLetters.get(0).contains("\"status\":400"));
+            assertTrue(deadLetters.get(0), deadLetters.get(0).contains("\"source\":{\"name\":\"bad\"}"));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.griddynamics.esingestion.ingest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonArraySplitterTest {
+
+    private static final String TRICKY_ARRAY = "[ {\"name\":\"]}[{\",\"id\":1},\n"
+            + "{\"name\":\"quote \\\" and backslash \\\\\",\"tags\":[\"a]\",\"\\\\\"]},\r\n"
+            + "\"string \\\\\\\" ]\", 12 , -3.5e2, true, null, [1,[2,{\"x\":\"}\"}]] ]";
+    private static final List<String> TRICKY_ELEMENTS = Arrays.asList(
+            "{\"name\":\"]}[{\",\"id\":1}",
+            "{\"name\":\"quote \\\" and backslash \\\\\",\"tags\":[\"a]\",\"\\\\\"]}",
+            "\"string \\\\\\\" ]\"",
+            "12",
+            "-3.5e2",
+            "true",
+            "null",
+            "[1,[2,{\"x\":\"}\"}]]");
+
+    @Test
+    public void testStringsWithBracketsAndEscapes() throws IOException {
+        assertEquals(TRICKY_ELEMENTS, split(TRICKY_ARRAY, 64 * 1024));
+    }
+
+    @Test
+    public void testWindowBoundaries() throws IOException {
+        // Every element is cut by the end of a window at some chunk size
+        for (int chunkSize = 1; chunkSize <= TRICKY_ARRAY.length(); chunkSize++) {
+            assertEquals("Chunk size " + chunkSize, TRICKY_ELEMENTS, split(TRICKY_ARRAY, chunkSize));
+        }
+    }
+
+    @Test
+    public void testResumeFromOffset() throws IOException {
+        byte[] bytes = TRICKY_ARRAY.getBytes(StandardCharsets.UTF_8);
+        for (int read = 1; read < TRICKY_ELEMENTS.size(); read++) {
+            JsonArraySplitter splitter = new JsonArraySplitter(new StreamByteWindow(new ByteArrayInputStream(bytes), 5));
+            for (int i = 0; i < read; i++) {
+                assertNotNull(splitter.next());
+            }
+            long offset = splitter.getOffset();
+
+            ByteWindow window = new StreamByteWindow(new ByteArrayInputStream(bytes), 5, offset);
+            List<String> rest = readAll(new JsonArraySplitter(window, true));
+            assertEquals(TRICKY_ELEMENTS.subList(read, TRICKY_ELEMENTS.size()), rest);
+        }
+    }
+
+    @Test
+    public void testOffsetAfterLastElement() throws IOException {
+        byte[] bytes = "[1,2] ".getBytes(StandardCharsets.UTF_8);
+        JsonArraySplitter splitter = new JsonArraySplitter(new StreamByteWindow(new ByteArrayInputStream(bytes), 2));
+        assertEquals("1", toString(splitter.next()));
+        assertEquals(2, splitter.getOffset());
+        assertEquals("2", toString(splitter.next()));
+        assertEquals(4, splitter.getOffset());
+        assertNull(splitter.next());
+        assertEquals(5, splitter.getOffset());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void testByteOrderMark() throws IOException {
+        byte[] array = "[{\"id\":\"ü\"}]".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[array.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(array, 0, bytes, 3, array.length);
+        List<String> elements = readAll(new JsonArraySplitter(new StreamByteWindow(new ByteArrayInputStream(bytes), 2)));
+        assertEquals(Arrays.asList("{\"id\":\"ü\"}"), elements);
+    }
+
+    @Test
+    public void testEmptyArray() throws IOException {
+        assertEquals(new ArrayList<String>(), split(" [ \n ] ", 3));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testEmptyInput() throws IOException {
+        split("  ", 16);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedElement() throws IOException {
+        split("[{\"id\":1},{\"id\":\"2", 4);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testMissingClosingBracket() throws IOException {
+        split("[{\"id\":1},", 4);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnArray() throws IOException {
+        split("{\"id\":1}", 16);
+    }
+
+    private static List<String> split(String json, int chunkSize) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return readAll(new JsonArraySplitter(new StreamByteWindow(new ByteArrayInputStream(bytes), chunkSize)));
+    }
+
+    private static List<String> readAll(JsonArraySplitter splitter) throws IOException {
+        List<String> elements = new ArrayList<>();
+        ByteBuffer element;
+        while ((element = splitter.next()) != null) {
+            elements.add(toString(element));
+        }
+        return elements;
+    }
+
+    private static String toString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,58 @@
+package com.griddynamics.esingestion.ingest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OffsetWatermarkTest {
+
+    @Test
+    public void testNothingRead() {
+        assertEquals(42, new OffsetWatermark(42).get());
+    }
+
+    @Test
+    public void testPendingDocumentHoldsWatermark() {
+        OffsetWatermark watermark = new OffsetWatermark(1);
+        watermark.onRead(1, 10);
+        watermark.onRead(11, 20);
+        assertEquals(1, watermark.get());
+
+        watermark.onCompleted(1);
+        assertEquals(11, watermark.get());
+
+        watermark.onCompleted(11);
+        assertEquals(20, watermark.get());
+    }
+
+    @Test
+    public void testCompletedOutOfOrder() {
+        OffsetWatermark watermark = new OffsetWatermark(1);
+        watermark.onRead(1, 10);
+        watermark.onRead(11, 20);
+        watermark.onRead(21, 30);
+
+        watermark.onCompleted(21);
+        assertEquals(1, watermark.get());
+        watermark.onCompleted(1);
+        assertEquals(11, watermark.get());
+
+        // Reading goes on while a document is pending
+        watermark.onRead(31, 40);
+        assertEquals(11, watermark.get());
+        watermark.onCompleted(31);
+        assertEquals(11, watermark.get());
+        watermark.onCompleted(11);
+        assertEquals(40, watermark.get());
+    }
+
+    @Test
+    public void testCompletedTwice() {
+        OffsetWatermark watermark = new OffsetWatermark(0);
+        watermark.onRead(0, 10);
+        watermark.onRead(10, 20);
+        watermark.onCompleted(0);
+        watermark.onCompleted(0);
+        assertEquals(10, watermark.get());
+    }
+}
@@ -0,0 +1,66 @@
+package com.griddynamics.esingestion.ingest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SortKeysTest {
+
+    @Test
+    public void testToJson() {
+        assertEquals("\"123\"", SortKeys.toJson("123"));
+        assertEquals("\"\\\"123\\\"\"", SortKeys.toJson("\"123\""));
+        assertEquals("\"A-12\"", SortKeys.toJson("A-12"));
+        assertEquals("\"007\"", SortKeys.toJson("007"));
+        assertEquals("\"\"", SortKeys.toJson(""));
+        assertEquals("\"a\\\\b\\nc\"", SortKeys.toJson("a\\b\nc"));
+    }
+
+    @Test
+    public void testAppendTo() throws IOException {
+        assertEquals("{\"name\":\"a\",\"sortKey\":\"7\"}", appendTo("{\"name\":\"a\"}", "7"));
+        assertEquals("{ \"name\" : \"a\" \n,\"sortKey\":\"A-12\"}", appendTo("{ \"name\" : \"a\" \n} \n", "A-12"));
+    }
+
+    @Test
+    public void testAppendToEmptyObject() throws IOException {
+        assertEquals("{\"sortKey\":\"1\"}", appendTo("{}", "1"));
+        assertEquals("{ \n\"sortKey\":\"1\"}", appendTo("{ \n}", "1"));
+    }
+
+    @Test
+    public void testAppendToKeepsSource() throws IOException {
+        ByteBuffer source = ByteBuffer.wrap("{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        SortKeys.appendTo(source, "2");
+        assertEquals(0, source.position());
+        assertEquals("{\"a\":1}", new String(source.array(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void testAppendToArray() throws IOException {
+        appendTo("[1]", "1");
+    }
+
+    @Test(expected = IOException.class)
+    public void testAppendToBlank() throws IOException {
+        appendTo(" ", "1");
+    }
+
+    @Test
+    public void testAppendJsonTo() throws IOException {
+        ByteBuffer source = ByteBuffer.wrap("{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        // A string is kept as it is in the action line, other values become strings like their _id
+        assertEquals("{\"a\":1,\"sortKey\":\"x\\u0041\"}",
+                new String(SortKeys.appendJsonTo(source, "\"x\\u0041\""), StandardCharsets.UTF_8));
+        assertEquals("{\"a\":1,\"sortKey\":\"12\"}", new String(SortKeys.appendJsonTo(source, "12"), StandardCharsets.UTF_8));
+    }
+
+    private static String appendTo(String source, String id) throws IOException {
+        byte[] result = SortKeys.appendTo(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), id);
+        return new String(result, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,132 @@
+package com.griddynamics.esingestion.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local _bulk endpoint which answers every item with the status chosen by the test and keeps the bodies it has received.
+ */
+class StubBulkServer implements Closeable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    interface ItemStatus {
+        /**
+         * @param call   number of the bulk request, counted from one
+         * @param action name of the action, e.g. "index" or "delete"
+         * @param source source line of the item, null for deletes
+         */
+        int get(int call, String action, String source);
+    }
+
+    private final HttpServer server;
+    private final RestHighLevelClient client;
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> callNanos = Collections.synchronizedList(new ArrayList<>());
+
+    StubBulkServer(ItemStatus itemStatus) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] response;
+            int status = 200;
+            synchronized (this) {
+                callNanos.add(System.nanoTime());
+                String body = read(exchange.getRequestBody());
+                bodies.add(body);
+                try {
+                    response = respond(body, bodies.size(), itemStatus).getBytes(StandardCharsets.UTF_8);
+                } catch (IOException | RuntimeException ex) {
+                    // Answered, so that a mistake of the test fails the bulk instead of leaving it in flight
+                    status = 500;
+                    response = ex.toString().getBytes(StandardCharsets.UTF_8);
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        });
+        server.start();
+        client = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", server.getAddress().getPort())));
+    }
+
+    RestHighLevelClient getClient() {
+        return client;
+    }
+
+    List<String> getBodies() {
+        return new ArrayList<>(bodies);
+    }
+
+    List<Long> getCallNanos() {
+        return new ArrayList<>(callNanos);
+    }
+
+    private static String respond(String body, int call, ItemStatus itemStatus) throws IOException {
+        StringBuilder items = new StringBuilder();
+        String[] lines = body.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().isEmpty()) {
+                continue;
+            }
+            String action = objectMapper.readTree(lines[i]).fieldNames().next();
+            String source = action.equals("delete") ? null : lines[++i];
+            int status = itemStatus.get(call, action, source);
+            if (items.length() > 0) {
+                items.append(',');
+            }
+            items.append("{\"").append(action).append("\":{\"_index\":\"stub\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+                    .append("\",\"status\":").append(status)
+                    .append(status >= 300 ? ",\"error\":{\"type\":\"stub_exception\",\"reason\":\"status " + status + "\"}"
+                            : ",\"result\":\"" + result(action) + "\",\"_version\":1")
+                    .append("}}");
+        }
+        return "{\"took\":1,\"errors\":true,\"items\":[" + items + "]}";
+    }
+
+    // Responses are checked against their action when they are parsed
+    private static String result(String action) {
+        switch (action) {
+            case "delete":
+                return "deleted";
+            case "update":
+                return "updated";
+            default:
+                return "created";
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            client.close();
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.griddynamics.productindexer;
 
+import com.griddynamics.productindexer.benchmark.CatalogGenerator;
+import com.griddynamics.productindexer.benchmark.IndexingBenchmark;
+import com.griddynamics.productindexer.config.IndexerConfig;
+import com.griddynamics.productindexer.model.IndexingMode;
 import com.griddynamics.productindexer.service.ProductIndexService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 @Slf4j
@@ -13,14 +19,34 @@ public class Application implements CommandLineRunner {
 
     @Autowired
     private ProductIndexService productIndexService;
+    @Autowired
+    private IndexerConfig indexerConfig;
+    @Autowired
+    private CatalogGenerator catalogGenerator;
+    @Autowired
+    private IndexingBenchmark indexingBenchmark;
 
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(Application.class, args);
+        // Without the web server (fast-startup profile) nothing is left to do, but the Elasticsearch client threads keep the JVM alive
+        if (!(context instanceof WebServerApplicationContext)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
     @Override
     public void run(String... args) {
-        productIndexService.recreateIndex();
+        if (indexerConfig.getMode() == IndexingMode.FEED) {
+            productIndexService.followChangeFeed();
+        } else if (indexerConfig.getMode() == IndexingMode.RESTORE) {
+            productIndexService.restoreIndex();
+        } else if (indexerConfig.getMode() == IndexingMode.GENERATE) {
+            catalogGenerator.generate();
+        } else if (indexerConfig.getMode() == IndexingMode.BENCHMARK) {
+            indexingBenchmark.run();
+        } else {
+            productIndexService.recreateIndex();
+        }
     }
 }
 
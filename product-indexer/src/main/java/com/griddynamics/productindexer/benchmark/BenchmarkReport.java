@@ -0,0 +1,36 @@
+package com.griddynamics.productindexer.benchmark;
+
+import com.griddynamics.esingestion.metrics.IndexingReport;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a benchmark run, written as JSON when it is over. Throughput is per second of wall time.
+ */
+@Data
+public class BenchmarkReport {
+    private String dataFile;
+    private String target;
+    private long startedAt;
+    private int warmUpIterations;
+    private int iterations;
+    private long documents;
+    private long bytes;
+    // Stages by name: parse, transform, send
+    private Map<String, StageResult> stages = new LinkedHashMap<>();
+
+    @Data
+    public static class StageResult {
+        private double documentsPerSecond;
+        private double minDocumentsPerSecond;
+        private double maxDocumentsPerSecond;
+        private double bytesPerSecond;
+        private List<Long> iterationMillis = new ArrayList<>();
+        // Metrics of the last measured iteration, e.g. parse and enrich times, bulk latencies
+        private IndexingReport lastIteration;
+    }
+}
@@ -0,0 +1,187 @@
+package com.griddynamics.productindexer.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for an Elasticsearch node which only knows {@code POST /_bulk}: every item is acknowledged
+ * as written, nothing is stored. Used to measure the indexer without the cost of indexing.
+ */
+@Slf4j
+public class BulkStandIn implements Closeable {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final String DELETE = "delete";
+    private static final String UPDATE = "update";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final AtomicLong seqNo = new AtomicLong();
+    private final AtomicLong receivedActions = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     *
+     * @param latency time taken to answer every bulk
+     */
+    public BulkStandIn(Duration latency) throws IOException {
+        this.latencyMillis = latency.toMillis();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        log.info("Bulk stand-in is listening on {}.", getHost());
+    }
+
+    public String getHost() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long getReceivedActions() {
+        return receivedActions.get();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith("/_bulk")) {
+                respond(exchange, 404, "{\"error\":\"only _bulk is supported by the stand-in\",\"status\":404}"
+                        .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] response = bulkResponse(body);
+            receivedBytes.addAndGet(body.length);
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            respond(exchange, 200, response);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Bulk stand-in could not answer a request: {}", ex.toString());
+            respond(exchange, 400, ("{\"error\":\"" + ex.getClass().getSimpleName() + "\",\"status\":400}").getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    // Acknowledges every action line of the body, the line after it is its source unless it is a delete
+    private byte[] bulkResponse(byte[] body) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 8 + 64);
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.writeStartObject();
+            generator.writeNumberField("took", latencyMillis);
+            generator.writeBooleanField("errors", false);
+            generator.writeArrayFieldStart("items");
+            int position = 0;
+            while (position < body.length) {
+                int lineEnd = lineEnd(body, position);
+                if (lineEnd > position) {
+                    String opType = writeItem(generator, body, position, lineEnd - position);
+                    receivedActions.incrementAndGet();
+                    if (!DELETE.equals(opType)) {
+                        lineEnd = lineEnd(body, lineEnd + 1);
+                    }
+                }
+                position = lineEnd + 1;
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    private static int lineEnd(byte[] body, int position) {
+        while (position < body.length && body[position] != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private String writeItem(JsonGenerator generator, byte[] body, int offset, int length) throws IOException {
+        String opType;
+        String index = null;
+        String id = null;
+        try (JsonParser parser = jsonFactory.createParser(body, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+                throw new IOException("Bulk action line must be an object with the operation");
+            }
+            opType = parser.getCurrentName();
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("_index".equals(field)) {
+                    index = parser.getText();
+                } else if ("_id".equals(field)) {
+                    id = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        long itemSeqNo = seqNo.getAndIncrement();
+        boolean created = !DELETE.equals(opType) && !UPDATE.equals(opType);
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(opType);
+        generator.writeStringField("_index", index != null ? index : "stand-in");
+        generator.writeStringField("_type", "_doc");
+        generator.writeStringField("_id", id != null ? id : Long.toString(itemSeqNo));
+        generator.writeNumberField("_version", 1);
+        generator.writeStringField("result", created ? "created" : DELETE.equals(opType) ? "deleted" : "updated");
+        generator.writeObjectFieldStart("_shards");
+        generator.writeNumberField("total", 1);
+        generator.writeNumberField("successful", 1);
+        generator.writeNumberField("failed", 0);
+        generator.writeEndObject();
+        generator.writeNumberField("_seq_no", itemSeqNo);
+        generator.writeNumberField("_primary_term", 1);
+        generator.writeNumberField("status", created ? 201 : 200);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        return opType;
+    }
+}
@@ -0,0 +1,150 @@
+package com.griddynamics.productindexer.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.griddynamics.productindexer.config.GeneratorConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes synthetic catalogs with the shape of the bulk data file: products with a string id, brand, name, price
+ * and nested skus with color and size, one product per line of a JSON array. The catalog is streamed,
+ * so its size is only limited by the disk.
+ */
+@Component
+@Slf4j
+public class CatalogGenerator {
+
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL = 1_000_000;
+
+    private static final String[] BRAND_WORDS = {"Calvin", "Levi's", "North", "Urban", "Blue", "Royal", "Silver", "Wild",
+            "Grand", "Green", "Iron", "Golden", "Red", "Coastal", "Alpine", "Metro", "Vintage", "Pacific", "Nordic", "Sun"};
+    private static final String[] BRAND_SUFFIXES = {"Klein", "Strauss", "Face", "Outfitters", "Line", "Denim", "Works",
+            "Apparel", "Co", "Threads", "Studio", "Label", "Supply", "Republic", "Mills", "Crew", "House", "Goods", "Wear", "Club"};
+    private static final String[] GENDERS = {"Women", "Men", "Kids", "Unisex"};
+    private static final String[] STYLES = {"ankle", "skinny", "slim", "classic", "relaxed", "straight", "bootcut",
+            "cropped", "oversized", "vintage", "stretch", "high-rise"};
+    private static final String[] CATEGORIES = {"jeans", "shirt", "t-shirt", "jacket", "dress", "sweater", "shorts",
+            "skirt", "hoodie", "coat", "sneakers", "boots"};
+
+    @Autowired
+    private GeneratorConfig config;
+
+    public void generate() {
+        Path output = Paths.get(config.getOutput());
+        long startedAt = System.currentTimeMillis();
+        try (OutputStream stream = openOutput(output);
+             JsonGenerator generator = new JsonFactory().createGenerator(stream)) {
+            // Products are separated by hand, so that there is one per line as in the bulk data file
+            generator.setRootValueSeparator(null);
+            write(generator);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during writing the catalog to " + output, ex);
+        }
+        log.info("{} products have been written to {} ({} bytes) in {} ms.", config.getProducts(), output,
+                output.toFile().length(), System.currentTimeMillis() - startedAt);
+    }
+
+    private static OutputStream openOutput(Path output) throws IOException {
+        OutputStream stream = Files.newOutputStream(output);
+        if (output.getFileName().toString().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, OUTPUT_BUFFER_SIZE);
+        }
+        return new BufferedOutputStream(stream, OUTPUT_BUFFER_SIZE);
+    }
+
+    private void write(JsonGenerator generator) throws IOException {
+        Random random = new Random(config.getSeed());
+        ZipfDistribution brands = new ZipfDistribution(config.getBrands(), config.getBrandSkew());
+        ZipfDistribution colors = new ZipfDistribution(config.getColors().size(), config.getColorSkew());
+
+        generator.writeRaw("[\n");
+        for (long i = 1; i <= config.getProducts(); i++) {
+            if (i > 1) {
+                generator.writeRaw(",\n");
+            }
+            long id = i > 1 && random.nextDouble() < config.getDuplicateRate() ? 1 + (long) (random.nextDouble() * (i - 1)) : i;
+            generator.writeStartObject();
+            generator.writeStringField("id", Long.toString(id));
+            generator.writeStringField("brand", brandName(brands.sample(random)));
+            generator.writeStringField("name", productName(random));
+            generator.writeFieldName("price");
+            generator.writeNumber(price(random));
+            generator.writeArrayFieldStart("skus");
+            writeSkus(generator, random, colors);
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            if (i % PROGRESS_INTERVAL == 0) {
+                log.info("{} of {} products have been written.", i, config.getProducts());
+            }
+        }
+        generator.writeRaw("\n]\n");
+    }
+
+    // Brand of popularity rank k, the same for every catalog
+    private static String brandName(int rank) {
+        int combinations = BRAND_WORDS.length * BRAND_SUFFIXES.length;
+        // The most popular brands pair each word with its own suffix, e.g. "Calvin Klein", "Levi's Strauss"
+        String name = BRAND_WORDS[rank % BRAND_WORDS.length] + " "
+                + BRAND_SUFFIXES[(rank + rank / BRAND_WORDS.length) % BRAND_SUFFIXES.length];
+        return rank < combinations ? name : name + " " + (rank / combinations + 1);
+    }
+
+    // E.g. "Women ankle skinny jeans, model 1282"
+    private static String productName(Random random) {
+        StringBuilder name = new StringBuilder(GENDERS[random.nextInt(GENDERS.length)]);
+        int styles = random.nextInt(3);
+        for (int i = 0; i < styles; i++) {
+            name.append(' ').append(STYLES[random.nextInt(STYLES.length)]);
+        }
+        return name.append(' ').append(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                .append(", model ").append(100 + random.nextInt(9900))
+                .toString();
+    }
+
+    private BigDecimal price(Random random) {
+        double price = config.getPriceMedian() * Math.exp(config.getPriceSpread() * random.nextGaussian());
+        return BigDecimal.valueOf(Math.max(1, Math.round(price)) * 100 - 1, 2);
+    }
+
+    private void writeSkus(JsonGenerator generator, Random random, ZipfDistribution colors) throws IOException {
+        List<String> sizes = config.getSizes();
+        int colorCount = 1 + random.nextInt(Math.min(config.getMaxColorsPerProduct(), config.getColors().size()));
+        Set<String> productColors = new LinkedHashSet<>();
+        while (productColors.size() < colorCount) {
+            productColors.add(config.getColors().get(colors.sample(random)));
+        }
+
+        List<String[]> skus = new ArrayList<>();
+        for (String color : productColors) {
+            int first = random.nextInt(sizes.size());
+            int last = first + random.nextInt(sizes.size() - first);
+            for (int size = first; size <= last; size++) {
+                skus.add(new String[]{color, sizes.get(size)});
+            }
+        }
+        for (String[] sku : skus.subList(0, Math.min(skus.size(), config.getMaxSkusPerProduct()))) {
+            generator.writeStartObject();
+            generator.writeStringField("color", sku[0]);
+            generator.writeStringField("size", sku[1]);
+            generator.writeEndObject();
+        }
+    }
+}
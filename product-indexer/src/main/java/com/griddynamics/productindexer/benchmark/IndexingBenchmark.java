@@ -0,0 +1,251 @@
+package com.griddynamics.productindexer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.DuplicateHandlingConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.config.PipelineConfig;
+import com.griddynamics.esingestion.index.IndexAliasManager;
+import com.griddynamics.esingestion.ingest.BulkIngester;
+import com.griddynamics.esingestion.ingest.ByteWindows;
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.esingestion.ingest.DuplicateIdFilter;
+import com.griddynamics.esingestion.ingest.IndexingPipeline;
+import com.griddynamics.esingestion.ingest.JsonArraySplitter;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import com.griddynamics.esingestion.metrics.IndexingReport;
+import com.griddynamics.esingestion.model.DuplicatePolicy;
+import com.griddynamics.productindexer.config.BenchmarkConfig;
+import com.griddynamics.productindexer.config.EnrichmentConfig;
+import com.griddynamics.productindexer.config.LoadProfileConfig;
+import com.griddynamics.productindexer.ingest.ProductDocumentParser;
+import com.griddynamics.productindexer.model.BenchmarkTarget;
+import com.griddynamics.productindexer.model.ProductDocument;
+import com.griddynamics.productindexer.repository.IndexSettingsProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Measures the throughput of the indexer stages on a catalog, each stage on its own so that a slowdown can be
+ * attributed: parse (split and parse on one thread), transform (parse, enrich and build the write request
+ * on one thread) and send (the whole pipeline with the configured workers and bulk settings).
+ * <p>
+ * The send stage goes either to a {@link BulkStandIn}, which shows the most the indexer can do, or to a new index
+ * on the configured cluster, created with the same settings and mappings as in full mode and deleted afterwards.
+ */
+@Component
+@Slf4j
+public class IndexingBenchmark {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String STAGE_PARSE = "parse";
+    private static final String STAGE_TRANSFORM = "transform";
+    private static final String STAGE_SEND = "send";
+
+    @Autowired
+    private BenchmarkConfig config;
+    @Autowired
+    private BulkConfig bulkConfig;
+    @Autowired
+    private FailureHandlingConfig failureConfig;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private DuplicateHandlingConfig duplicateConfig;
+    @Autowired
+    private LoadProfileConfig loadProfileConfig;
+    @Autowired
+    private EnrichmentConfig enrichmentConfig;
+    @Autowired
+    private List<DocumentEnricher<ProductDocument>> availableEnrichers;
+    @Autowired
+    private RestHighLevelClient esClient;
+
+    @Value("${com.griddynamics.product.indexer.files.settings:classpath:elastic/productindex/settings.json}")
+    private Resource productsSettingsFile;
+    @Value("${com.griddynamics.product.indexer.files.mappings:classpath:elastic/productindex/mappings.json}")
+    private Resource productsMappingsFile;
+
+    public void run() {
+        Resource data = new FileSystemResource(config.getDataFile());
+        if (!data.exists()) {
+            throw new IllegalArgumentException("Benchmark data file not found: " + config.getDataFile());
+        }
+        List<DocumentEnricher<ProductDocument>> enrichers = enrichmentConfig.select(availableEnrichers);
+
+        BenchmarkReport report = new BenchmarkReport();
+        report.setDataFile(config.getDataFile());
+        report.setTarget(config.getTarget().name().toLowerCase());
+        report.setStartedAt(System.currentTimeMillis());
+        report.setWarmUpIterations(config.getWarmUpIterations());
+        report.setIterations(config.getIterations());
+
+        runStage(report, STAGE_PARSE, () -> parse(data, Collections.emptyList(), false));
+        runStage(report, STAGE_TRANSFORM, () -> parse(data, enrichers, true));
+        try (BulkStandIn standIn = config.getTarget() == BenchmarkTarget.STAND_IN ? new BulkStandIn(config.getStandInLatency()) : null) {
+            if (standIn != null) {
+                try (RestHighLevelClient standInClient = new RestHighLevelClient(RestClient.builder(HttpHost.create(standIn.getHost())))) {
+                    runStage(report, STAGE_SEND, () -> send(data, enrichers, standInClient, config.getIndex()));
+                }
+            } else {
+                runStage(report, STAGE_SEND, () -> sendToNewIndex(data, enrichers));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during starting the bulk stand-in", ex);
+        }
+        writeReport(report);
+    }
+
+    private void runStage(BenchmarkReport report, String stage, Supplier<IndexingReport> iteration) {
+        List<IndexingReport> measured = new ArrayList<>();
+        for (int i = 0; i < config.getWarmUpIterations() + config.getIterations(); i++) {
+            boolean warmUp = i < config.getWarmUpIterations();
+            IndexingReport result = iteration.get();
+            log.info("Benchmark stage {} {} iteration: {} documents in {} ms, {} docs/s.", stage, warmUp ? "warm-up" : "measured",
+                    result.getDocumentsRead(), result.getPhaseMillis().get(IndexingMetrics.PHASE_LOAD), Math.round(result.getDocumentsPerSecond()));
+            if (!warmUp) {
+                measured.add(result);
+            }
+        }
+        if (measured.isEmpty()) {
+            return;
+        }
+
+        BenchmarkReport.StageResult stageResult = new BenchmarkReport.StageResult();
+        List<Double> documentsPerSecond = new ArrayList<>();
+        List<Double> bytesPerSecond = new ArrayList<>();
+        for (IndexingReport result : measured) {
+            documentsPerSecond.add(result.getDocumentsPerSecond());
+            bytesPerSecond.add(result.getBytesPerSecond());
+            stageResult.getIterationMillis().add(result.getPhaseMillis().get(IndexingMetrics.PHASE_LOAD));
+        }
+        stageResult.setDocumentsPerSecond(median(documentsPerSecond));
+        stageResult.setMinDocumentsPerSecond(Collections.min(documentsPerSecond));
+        stageResult.setMaxDocumentsPerSecond(Collections.max(documentsPerSecond));
+        stageResult.setBytesPerSecond(median(bytesPerSecond));
+        IndexingReport last = measured.get(measured.size() - 1);
+        stageResult.setLastIteration(last);
+        report.getStages().put(stage, stageResult);
+        report.setDocuments(last.getDocumentsRead());
+        report.setBytes(last.getBytesRead());
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    // Split, parse and optionally transform every product on the calling thread
+    private IndexingReport parse(Resource data, List<DocumentEnricher<ProductDocument>> enrichers, boolean transform) {
+        IndexingMetrics metrics = new IndexingMetrics(new SimpleMeterRegistry());
+        metrics.timePhase(IndexingMetrics.PHASE_LOAD, () -> {
+            try (JsonArraySplitter splitter = new JsonArraySplitter(ByteWindows.open(data, 0))) {
+                ByteBuffer element;
+                while ((element = splitter.next()) != null) {
+                    metrics.onDocumentRead(element.remaining());
+                    long parseStartedAt = System.nanoTime();
+                    ProductDocument document = ProductDocumentParser.parse(element);
+                    metrics.onDocumentParsed(System.nanoTime() - parseStartedAt);
+                    if (transform) {
+                        DocumentEnricher.enrichAll(enrichers, document, metrics);
+                        createIndexRequest(document, config.getIndex());
+                    }
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("An error occurred during reading the benchmark data file " + config.getDataFile(), ex);
+            }
+        });
+        return metrics.report();
+    }
+
+    private IndexingReport sendToNewIndex(Resource data, List<DocumentEnricher<ProductDocument>> enrichers) {
+        IndexAliasManager aliasManager = new IndexAliasManager(esClient, config.getIndex());
+        String index = aliasManager.newIndexName();
+        IndexSettingsProfile settingsProfile = new IndexSettingsProfile(readResource(productsSettingsFile));
+        aliasManager.createIndex(index, loadProfileConfig.isEnabled()
+                ? settingsProfile.getLoadSettings(loadProfileConfig.isAsyncTranslog())
+                : settingsProfile.getSettings(), readResource(productsMappingsFile));
+        try {
+            return send(data, enrichers, esClient, index);
+        } finally {
+            aliasManager.deleteIndex(index);
+        }
+    }
+
+    // The same pipeline as in full mode
+    private IndexingReport send(Resource data, List<DocumentEnricher<ProductDocument>> enrichers, RestHighLevelClient client, String index) {
+        IndexingMetrics metrics = new IndexingMetrics(new SimpleMeterRegistry());
+        metrics.setIndex(index);
+        metrics.timePhase(IndexingMetrics.PHASE_LOAD, () -> {
+            try (JsonArraySplitter splitter = new JsonArraySplitter(ByteWindows.open(data, 0));
+                 BulkIngester bulkIngester = new BulkIngester(client, bulkConfig, failureConfig, metrics)) {
+                DuplicateIdFilter documents = new DuplicateIdFilter(splitter, ProductDocumentParser::readId, duplicateConfig,
+                        bulkIngester, index, metrics);
+                IndexingPipeline<ProductDocument> pipeline = new IndexingPipeline<>(pipelineConfig, bulkIngester, metrics,
+                        ProductDocumentParser::parse, enrichers);
+                pipeline.setVersionByOffset(duplicateConfig.getPolicy() == DuplicatePolicy.LAST_WINS);
+                pipeline.run(documents, document -> createIndexRequest(document, index));
+                bulkIngester.close();
+                if (bulkIngester.getFailedActions() > 0) {
+                    log.warn("{} documents could not be indexed during the benchmark.", bulkIngester.getFailedActions());
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("An error occurred during reading the benchmark data file " + config.getDataFile(), ex);
+            }
+        });
+        return metrics.report();
+    }
+
+    private static IndexRequest createIndexRequest(ProductDocument document, String index) {
+        return new IndexRequest(index)
+                .id(document.getId())
+                .source(document.getSource(), XContentType.JSON);
+    }
+
+    private static String readResource(Resource resource) {
+        try {
+            return StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can not read resource file: " + resource.getFilename(), ex);
+        }
+    }
+
+    private void writeReport(BenchmarkReport report) {
+        report.getStages().forEach((stage, result) -> log.info("Benchmark stage {}: {} docs/s ({} - {}), {} bytes/s.", stage,
+                Math.round(result.getDocumentsPerSecond()), Math.round(result.getMinDocumentsPerSecond()),
+                Math.round(result.getMaxDocumentsPerSecond()), Math.round(result.getBytesPerSecond())));
+        if (isBlank(config.getReportFile())) {
+            return;
+        }
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(config.getReportFile()), report);
+            log.info("Benchmark report has been written to {}.", config.getReportFile());
+        } catch (IOException ex) {
+            log.error("Could not write benchmark report to {}", config.getReportFile(), ex);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.griddynamics.productindexer.config;
+
+import com.griddynamics.productindexer.model.BenchmarkTarget;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.benchmark")
+@Data
+public class BenchmarkConfig {
+    // Catalog to index, e.g. one written in generate mode
+    private String dataFile = "generated-catalog.json.gz";
+    private BenchmarkTarget target = BenchmarkTarget.STAND_IN;
+    // Time the stand-in takes to answer a bulk, to emulate the latency of a node
+    private Duration standInLatency = Duration.ZERO;
+    // Prefix of the index names on the cluster target
+    private String index = "product_benchmark";
+
+    // Iterations whose results are thrown away, so that the measured ones run on warm JIT and caches
+    private int warmUpIterations = 1;
+    // Every stage is run this many times, the report has the median, min and max throughput
+    private int iterations = 3;
+    // JSON report of the benchmark, blank disables it
+    private String reportFile = "benchmark-report.json";
+}
@@ -0,0 +1,23 @@
+package com.griddynamics.productindexer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.feed")
+@Data
+public class ChangeFeedConfig {
+    // Append-only NDJSON change log, or a directory of them which are read in name order
+    private String path;
+    // The read position is saved to this file, so a restarted feed continues where it has stopped
+    private String positionFile = "change-feed-position.json";
+
+    // Changes are sent when this many are pending, or when the oldest of them has waited for maxLatency
+    private int batchSize = 1000;
+    private Duration maxLatency = Duration.ofSeconds(1);
+    // How often the change log is checked for new changes when everything has been read
+    private Duration pollInterval = Duration.ofMillis(200);
+}
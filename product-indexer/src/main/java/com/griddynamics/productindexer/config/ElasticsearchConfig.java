@@ -1,5 +1,6 @@
 package com.griddynamics.productindexer.config;
 
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
 import lombok.Data;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
@@ -13,6 +14,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 @Configuration
@@ -22,10 +25,14 @@ public class ElasticsearchConfig {
     private String esHost = "http://localhost:9200";
     private String user = "";
     private String pass = "";
+    // Force merge and other admin calls on large indices can take much longer than the client default
+    private Duration socketTimeout = Duration.ofSeconds(30);
 
     @Bean(name = "esClient")
     public RestHighLevelClient getEsClient() {
-        RestClientBuilder restClientBuilder = RestClient.builder(HttpHost.create(esHost));
+        RestClientBuilder restClientBuilder = RestClient.builder(HttpHost.create(esHost))
+            .setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder.setSocketTimeout((int) socketTimeout.toMillis()))
+            .setMaxRetryTimeoutMillis((int) socketTimeout.toMillis());
 
         // Use credentials if they exist (ES cluster should support authentication)
         if (isNotBlank(user) && isNotBlank(pass)) {
@@ -38,4 +45,9 @@ public class ElasticsearchConfig {
 
         return new RestHighLevelClient(restClientBuilder);
     }
+
+    @Bean
+    public ProductQueryBuilder getProductQueryBuilder(RestHighLevelClient esClient, WarmUpConfig warmUpConfig) {
+        return new ProductQueryBuilder(esClient, warmUpConfig.isFlatSkuFields());
+    }
 }
@@ -0,0 +1,33 @@
+package com.griddynamics.productindexer.config;
+
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.productindexer.model.ProductDocument;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.enrichment")
+@Data
+public class EnrichmentConfig {
+    // Names of the enrichers run on every product, in this order, by the pipeline workers: brandKey, priceTier, nameLowercase
+    private List<String> enrichers = new ArrayList<>();
+
+    /**
+     * @param available all enricher beans
+     * @return the enabled enrichers in the configured order
+     */
+    public List<DocumentEnricher<ProductDocument>> select(List<DocumentEnricher<ProductDocument>> available) {
+        List<DocumentEnricher<ProductDocument>> selected = new ArrayList<>();
+        for (String name : enrichers) {
+            selected.add(available.stream()
+                    .filter(enricher -> enricher.getName().equals(name))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown document enricher: " + name)));
+        }
+        return selected;
+    }
+}
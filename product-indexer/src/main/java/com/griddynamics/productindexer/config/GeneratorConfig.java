@@ -0,0 +1,36 @@
+package com.griddynamics.productindexer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.generator")
+@Data
+public class GeneratorConfig {
+    // Catalog is written as a JSON array of products, gzip compressed if the name ends with .gz
+    private String output = "generated-catalog.json.gz";
+    private long products = 100_000;
+    // Same seed, same settings: same catalog
+    private long seed = 1;
+
+    // Popularity of brands and colors follows a Zipf distribution with this exponent, 0 means uniform
+    private int brands = 200;
+    private double brandSkew = 1.0;
+    private List<String> colors = Arrays.asList("Black", "Blue", "White", "Red", "Grey", "Green", "Navy", "Beige", "Brown", "Pink");
+    private double colorSkew = 1.0;
+    // In size order, every color of a product comes in a run of consecutive sizes
+    private List<String> sizes = Arrays.asList("XS", "S", "M", "L", "XL", "XXL");
+    private int maxColorsPerProduct = 4;
+    private int maxSkusPerProduct = 12;
+
+    // Prices are log-normally distributed around the median and end with .99
+    private double priceMedian = 100;
+    private double priceSpread = 0.6;
+
+    // Fraction of products which repeat the id of an earlier product
+    private double duplicateRate = 0;
+}
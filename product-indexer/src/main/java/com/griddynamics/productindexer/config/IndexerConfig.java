@@ -0,0 +1,24 @@
+package com.griddynamics.productindexer.config;
+
+import com.griddynamics.productindexer.model.IndexingMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer")
+@Data
+public class IndexerConfig {
+    private IndexingMode mode = IndexingMode.FULL;
+
+    // JSON report with the metrics of the run is written to this file when it is over, blank disables it
+    private String reportFile = "indexing-report.json";
+
+    // Progress of a full build is saved to this file after every bulk, so that a run which has died
+    // can be resumed into the same index. Blank disables it
+    private String checkpointFile = "indexing-checkpoint.json";
+
+    // Facet counts of the whole index are computed once it is loaded and stored in its "_meta",
+    // the search service answers browse requests with them instead of running the aggregations
+    private boolean facetSnapshot = true;
+}
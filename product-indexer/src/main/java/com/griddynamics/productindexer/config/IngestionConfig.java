@@ -0,0 +1,58 @@
+package com.griddynamics.productindexer.config;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.DuplicateHandlingConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.config.PipelineConfig;
+import com.griddynamics.esingestion.config.ReindexConfig;
+import com.griddynamics.esingestion.config.SnapshotConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IngestionConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.product.indexer.bulk")
+    public BulkConfig bulkConfig() {
+        return new BulkConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.product.indexer.failures")
+    public FailureHandlingConfig failureHandlingConfig() {
+        return new FailureHandlingConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.product.indexer.pipeline")
+    public PipelineConfig pipelineConfig() {
+        return new PipelineConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.product.indexer.duplicates")
+    public DuplicateHandlingConfig duplicateHandlingConfig() {
+        return new DuplicateHandlingConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.product.indexer.snapshot")
+    public SnapshotConfig snapshotConfig() {
+        return new SnapshotConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.product.indexer.reindex")
+    public ReindexConfig reindexConfig() {
+        return new ReindexConfig();
+    }
+
+    @Bean
+    public IndexingMetrics indexingMetrics(MeterRegistry meterRegistry) {
+        return new IndexingMetrics(meterRegistry);
+    }
+}
@@ -0,0 +1,21 @@
+package com.griddynamics.productindexer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.load-profile")
+@Data
+public class LoadProfileConfig {
+    // Create new indices without refresh and replicas, serving settings are applied after the load
+    private boolean enabled = true;
+    // Fsync the translog in the background during the load instead of on every bulk
+    private boolean asyncTranslog = false;
+    // Number of segments to force merge the loaded index to, 0 disables force merge
+    private int maxNumSegments = 1;
+    // How long to wait for the loaded index to become green before giving up
+    private Duration greenTimeout = Duration.ofMinutes(5);
+}
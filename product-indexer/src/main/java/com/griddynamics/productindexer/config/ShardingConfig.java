@@ -0,0 +1,22 @@
+package com.griddynamics.productindexer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.sharding")
+@Data
+public class ShardingConfig {
+    // Override number_of_shards of new indices with a count derived from the bulk data size
+    private boolean enabled = true;
+    // Desired size of a primary shard
+    private DataSize targetShardSize = DataSize.ofGigabytes(30);
+    // Expected index size on disk per byte of bulk data
+    private double indexToDataRatio = 1.0;
+    // Expected bulk data size per byte of a compressed bulk data file
+    private double compressionRatio = 5.0;
+    private int minShards = 1;
+    private int maxShards = 32;
+}
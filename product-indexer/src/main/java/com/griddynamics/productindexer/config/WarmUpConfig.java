@@ -0,0 +1,25 @@
+package com.griddynamics.productindexer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.indexer.warm-up")
+@Data
+public class WarmUpConfig {
+    // Run searches against a new index before it gets the alias, so the first users do not pay for cold caches
+    private boolean enabled = true;
+    // Query log written by the search service, the same path as its queryLog.file. Without it only the facet
+    // aggregations are warmed up. The file rotated by the search service, with the ".1" suffix, is read as well
+    private String queryLog = "";
+    // Number of most recent queries of the log which are replayed
+    private int recentQueries = 1000;
+    // Warm-up stops after this many searches or after maxDuration, whichever comes first
+    private int maxQueries = 2000;
+    private Duration maxDuration = Duration.ofMinutes(1);
+    // Has to match the flatSkuFields setting of the search service, so the replayed requests are the same
+    private boolean flatSkuFields = false;
+}
@@ -0,0 +1,37 @@
+package com.griddynamics.productindexer.enrich;
+
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.productindexer.model.ProductDocument;
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Adds the brand as a key which does not depend on case, accents, spaces and punctuation,
+ * e.g. "calvinklein" for "Calvin Klein" and "Calvin-Klein".
+ */
+@Component
+public class BrandKeyEnricher implements DocumentEnricher<ProductDocument> {
+
+    public static final String BRAND_KEY_FIELD = "brandKey";
+
+    private static final Pattern NON_KEY_CHARACTERS = Pattern.compile("[^\\p{Alnum}]+");
+
+    @Override
+    public String getName() {
+        return BRAND_KEY_FIELD;
+    }
+
+    @Override
+    public void enrich(ProductDocument document) throws IOException {
+        Object brand = document.getSourceAsMap().get(ProductQueryBuilder.BRAND_FIELD);
+        if (brand instanceof String) {
+            String ascii = Normalizer.normalize((String) brand, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+            document.addField(BRAND_KEY_FIELD, NON_KEY_CHARACTERS.matcher(ascii.toLowerCase(Locale.ROOT)).replaceAll(""));
+        }
+    }
+}
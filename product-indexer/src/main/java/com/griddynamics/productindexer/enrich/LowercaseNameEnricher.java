@@ -0,0 +1,31 @@
+package com.griddynamics.productindexer.enrich;
+
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.productindexer.model.ProductDocument;
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Adds the lowercase name, for exact matching and sorting on a keyword instead of the analyzed name.
+ */
+@Component
+public class LowercaseNameEnricher implements DocumentEnricher<ProductDocument> {
+
+    public static final String NAME_LOWERCASE_FIELD = "nameLowercase";
+
+    @Override
+    public String getName() {
+        return NAME_LOWERCASE_FIELD;
+    }
+
+    @Override
+    public void enrich(ProductDocument document) throws IOException {
+        Object name = document.getSourceAsMap().get(ProductQueryBuilder.NAME_FIELD);
+        if (name instanceof String) {
+            document.addField(NAME_LOWERCASE_FIELD, ((String) name).toLowerCase(Locale.ROOT));
+        }
+    }
+}
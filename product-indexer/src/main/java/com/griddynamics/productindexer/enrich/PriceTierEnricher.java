@@ -0,0 +1,40 @@
+package com.griddynamics.productindexer.enrich;
+
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.productindexer.model.ProductDocument;
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregator;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Adds the key of the price facet range the product falls in, so the tier can be filtered on as a keyword.
+ * Products between the ranges get no tier, like they get no price facet bucket.
+ */
+@Component
+public class PriceTierEnricher implements DocumentEnricher<ProductDocument> {
+
+    public static final String PRICE_TIER_FIELD = "priceTier";
+
+    @Override
+    public String getName() {
+        return PRICE_TIER_FIELD;
+    }
+
+    @Override
+    public void enrich(ProductDocument document) throws IOException {
+        Object price = document.getSourceAsMap().get(ProductQueryBuilder.PRICE_FIELD);
+        if (!(price instanceof Number)) {
+            return;
+        }
+        // Price is a float field, the range aggregation compares the float value
+        double value = ((Number) price).floatValue();
+        for (RangeAggregator.Range range : ProductQueryBuilder.PRICE_RANGES) {
+            if (value >= range.getFrom() && value < range.getTo()) {
+                document.addField(PRICE_TIER_FIELD, range.getKey());
+                return;
+            }
+        }
+    }
+}
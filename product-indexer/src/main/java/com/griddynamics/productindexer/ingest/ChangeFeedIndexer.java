@@ -0,0 +1,304 @@
+package com.griddynamics.productindexer.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esingestion.ingest.BulkIngester;
+import com.griddynamics.esingestion.ingest.CheckpointStore;
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.esingestion.ingest.JsonBytes;
+import com.griddynamics.esingestion.ingest.OffsetWatermark;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import com.griddynamics.productindexer.config.ChangeFeedConfig;
+import com.griddynamics.productindexer.model.FeedPosition;
+import com.griddynamics.productindexer.model.ProductDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Follows append-only NDJSON change logs and applies the changes to an index in near real time.
+ * The input is a single file or a directory whose files are read in name order. Every line is either
+ * a product, which is indexed as a whole, or an object with the product id and {@code "_deleted": true}.
+ * Only complete lines are read, so a file can be appended to while it is followed.
+ * <p>
+ * Changes are sent in bulks of up to batchSize, and no change waits longer than maxLatency before it is sent.
+ * The read position is saved after every bulk: the offset before which every change has been applied.
+ * <p>
+ * Bulks may be in flight concurrently and rejected changes are resent later, so every change is written with its
+ * position in the feed as an external version: the number of its file and its offset. A change which arrives after
+ * a newer one of the same product fails with a version conflict and is dropped. A delete is remembered for
+ * index.gc_deletes, an older change of the product which arrives later than that is applied again.
+ */
+@Slf4j
+public class ChangeFeedIndexer {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String ID_FIELD = "id";
+    private static final String DELETED_FIELD = "_deleted";
+    private static final byte[] DELETED_FIELD_NAME = ("\"" + DELETED_FIELD + "\"").getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_READ_SIZE = 16 * 1024 * 1024;
+    // Versions are the file number followed by the offset in the file, which leaves 1 TB per file
+    private static final int OFFSET_BITS = 40;
+    private static final long MAX_FILE_SIZE = 1L << OFFSET_BITS;
+
+    private final ChangeFeedConfig config;
+    private final String index;
+    private final BulkIngester bulkIngester;
+    private final IndexingMetrics metrics;
+    private final List<DocumentEnricher<ProductDocument>> enrichers;
+    private final CheckpointStore<FeedPosition> positionStore;
+    private final Map<DocWriteRequest<?>, Long> requestOffsets = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean stopped;
+
+    private volatile String file;
+    private long fileNumber;
+    private long readOffset;
+    private volatile OffsetWatermark watermark;
+    private long savedOffset = -1;
+
+    public ChangeFeedIndexer(ChangeFeedConfig config, String index, BulkIngester bulkIngester, IndexingMetrics metrics,
+                             List<DocumentEnricher<ProductDocument>> enrichers) {
+        this.config = config;
+        this.index = index;
+        this.bulkIngester = bulkIngester;
+        this.metrics = metrics;
+        this.enrichers = enrichers;
+        this.positionStore = new CheckpointStore<>(config.getPositionFile(), FeedPosition.class);
+        bulkIngester.setCompletionListener(this::onCompleted);
+        bulkIngester.setVersionConflictsExpected(true);
+    }
+
+    /**
+     * Applies changes until {@link #stop(long)} is called.
+     */
+    public void run() throws IOException {
+        Path input = Paths.get(config.getPath());
+        FeedPosition position = positionStore.load();
+        if (position != null) {
+            // Positions saved before files were numbered belong to the first file
+            startFile(position.getFile(), position.getOffset(), Math.max(1, position.getFileNumber()));
+        }
+        log.info("Following change log {} from {} at offset {}, changes are applied to {}.", input, file, readOffset, index);
+
+        try {
+            while (!stopped) {
+                List<Path> files = listFiles(input);
+                Path current = files.stream().filter(path -> path.getFileName().toString().equals(file)).findFirst().orElse(null);
+                if (current == null) {
+                    // The first file, or the one after the saved position if it is not there anymore
+                    current = files.stream().filter(path -> file == null || path.getFileName().toString().compareTo(file) > 0)
+                            .findFirst().orElse(null);
+                    if (current != null) {
+                        startFile(current.getFileName().toString(), 0, fileNumber + 1);
+                    }
+                }
+
+                boolean progressed = current != null && readNewLines(current);
+                bulkIngester.flushIfExpired();
+                if (!progressed) {
+                    if (current != null && files.indexOf(current) < files.size() - 1) {
+                        finishFile();
+                        startFile(files.get(files.indexOf(current) + 1).getFileName().toString(), 0, fileNumber + 1);
+                        continue;
+                    }
+                    sleep(config.getPollInterval().toMillis());
+                }
+            }
+        } finally {
+            bulkIngester.close();
+            savePosition();
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Stops applying changes, sends the pending ones and waits until the position is saved.
+     */
+    public void stop(long timeoutMillis) throws InterruptedException {
+        stopped = true;
+        finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<Path> listFiles(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            return Files.exists(input) ? Collections.singletonList(input) : Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.list(input)) {
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private synchronized void startFile(String file, long offset, long fileNumber) {
+        this.file = file;
+        this.fileNumber = fileNumber;
+        this.readOffset = offset;
+        this.savedOffset = -1;
+        this.watermark = new OffsetWatermark(offset);
+        if (file != null) {
+            positionStore.save(new FeedPosition(file, offset, fileNumber));
+        }
+    }
+
+    // Waits until every change of the current file has been applied, before moving to the next one
+    private void finishFile() {
+        bulkIngester.flush();
+        while (!stopped && watermark.get() < readOffset) {
+            sleep(config.getPollInterval().toMillis());
+        }
+        log.info("Change log file {} has been applied up to offset {}.", file, readOffset);
+    }
+
+    // Reads the complete lines appended since the last read, returns false if there are none
+    private boolean readNewLines(Path path) throws IOException {
+        ByteBuffer region;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= readOffset) {
+                return false;
+            }
+            if (size > MAX_FILE_SIZE) {
+                throw new IOException("Change log " + path + " is larger than " + MAX_FILE_SIZE + " bytes, it has to be split into files");
+            }
+            region = channel.map(FileChannel.MapMode.READ_ONLY, readOffset, Math.min(size - readOffset, MAX_READ_SIZE));
+        }
+        int end = region.limit();
+        while (end > 0 && region.get(end - 1) != '\n') {
+            end--;
+        }
+        if (end == 0) {
+            if (region.limit() == MAX_READ_SIZE) {
+                throw new IOException("Change log " + path + " has a line longer than " + MAX_READ_SIZE + " bytes at offset " + readOffset);
+            }
+            return false;
+        }
+
+        int position = 0;
+        while (position < end) {
+            int lineEnd = position;
+            while (region.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            long startOffset = readOffset + position;
+            ByteBuffer line = region.duplicate().position(position).limit(lineEnd).slice();
+            position = lineEnd + 1;
+            watermark.onRead(startOffset, readOffset + position);
+            apply(line, startOffset);
+        }
+        readOffset += end;
+        return true;
+    }
+
+    private void apply(ByteBuffer line, long startOffset) {
+        if (JsonBytes.skipWhitespace(line, 0, line.limit()) == line.limit()) {
+            watermark.onCompleted(startOffset);
+            return;
+        }
+        metrics.onDocumentRead(line.remaining());
+        DocWriteRequest<?> request;
+        try {
+            request = createRequest(line, (fileNumber << OFFSET_BITS) + startOffset);
+        } catch (IOException | RuntimeException ex) {
+            // A change which can not be applied must not stop the feed
+            metrics.onDocumentSkipped();
+            log.warn("Skipping a change at offset {} of {} which can not be parsed: {}", startOffset, file, ex.getMessage());
+            watermark.onCompleted(startOffset);
+            return;
+        }
+        requestOffsets.put(request, startOffset);
+        bulkIngester.add(request);
+    }
+
+    // The version is the position of the change in the feed
+    private DocWriteRequest<?> createRequest(ByteBuffer line, long version) throws IOException {
+        if (contains(line, DELETED_FIELD_NAME)) {
+            byte[] bytes = new byte[line.remaining()];
+            line.duplicate().get(bytes);
+            Map<?, ?> change = objectMapper.readValue(bytes, Map.class);
+            if (Boolean.TRUE.equals(change.get(DELETED_FIELD))) {
+                Object id = change.get(ID_FIELD);
+                if (id == null) {
+                    throw new IOException("Deleted product has no id");
+                }
+                // Ids are stored as the JSON text of the id value
+                return new DeleteRequest(index, objectMapper.writeValueAsString(id))
+                        .version(version)
+                        .versionType(VersionType.EXTERNAL_GTE);
+            }
+        }
+
+        long parseStartedAt = System.nanoTime();
+        ProductDocument document = ProductDocumentParser.parse(line);
+        metrics.onDocumentParsed(System.nanoTime() - parseStartedAt);
+        if (document.getId() == null) {
+            throw new IOException("Product has no id");
+        }
+        DocumentEnricher.enrichAll(enrichers, document, metrics);
+        return new IndexRequest(index)
+                .id(document.getId())
+                .source(document.getSource(), XContentType.JSON)
+                .version(version)
+                .versionType(VersionType.EXTERNAL_GTE);
+    }
+
+    private static boolean contains(ByteBuffer buffer, byte[] sequence) {
+        int last = buffer.limit() - sequence.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < sequence.length && buffer.get(i + j) == sequence[j]) {
+                j++;
+            }
+            if (j == sequence.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Called by the bulk ingester when a bulk is done
+    private void onCompleted(List<DocWriteRequest<?>> requests) {
+        for (DocWriteRequest<?> request : requests) {
+            Long startOffset = requestOffsets.remove(request);
+            if (startOffset != null) {
+                watermark.onCompleted(startOffset);
+            }
+        }
+        savePosition();
+    }
+
+    private synchronized void savePosition() {
+        long offset = watermark.get();
+        if (file != null && offset > savedOffset) {
+            savedOffset = offset;
+            positionStore.save(new FeedPosition(file, offset, fileNumber));
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+    }
+}
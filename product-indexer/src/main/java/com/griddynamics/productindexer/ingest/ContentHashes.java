@@ -0,0 +1,44 @@
+package com.griddynamics.productindexer.ingest;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+/**
+ * Non-cryptographic content hashes used to detect changed products and index generations.
+ */
+public final class ContentHashes {
+
+    private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+    private ContentHashes() {
+    }
+
+    public static String hash(byte[] bytes, int offset, int length) {
+        return hashFunction.hashBytes(bytes, offset, length).toString();
+    }
+
+    public static String hash(String content) {
+        return hashFunction.hashString(content, StandardCharsets.UTF_8).toString();
+    }
+
+    public static String hash(Callable<InputStream> inputStreamSupplier) throws IOException {
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                try {
+                    return inputStreamSupplier.call();
+                } catch (IOException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new IOException(ex);
+                }
+            }
+        }.hash(hashFunction).toString();
+    }
+}
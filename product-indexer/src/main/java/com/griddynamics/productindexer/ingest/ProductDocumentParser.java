@@ -0,0 +1,242 @@
+package com.griddynamics.productindexer.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.griddynamics.esingestion.ingest.JsonBytes;
+import com.griddynamics.esingestion.ingest.SortKeys;
+import com.griddynamics.productindexer.model.ProductDocument;
+import org.elasticsearch.common.bytes.BytesArray;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Turns the raw JSON of a product into a {@link ProductDocument} without decoding it.
+ * The top-level "id" member is located on the raw bytes and cut out of the source, and a hash of the
+ * remaining content is appended to the source as the content hash field.
+ * Only the "skus" member is decoded: the distinct colors, sizes and color+size pairs of the skus are appended
+ * to the source as flat keyword fields, so the search does not have to go through the nested skus for facets.
+ * The sort key of the id is appended as well, it is the tie-breaker of the search instead of _id.
+ * Line breaks between tokens are replaced with spaces, so the source can be used as a line of a bulk body.
+ */
+public final class ProductDocumentParser {
+
+    // Has to be increased whenever the derived fields change, it is part of the mappings hash of an index generation
+    public static final int DERIVED_FIELDS_VERSION = 3;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final String ID_FIELD = "id";
+    private static final String SKUS_FIELD = "skus";
+    private static final String COLOR_FIELD = "color";
+    private static final String SIZE_FIELD = "size";
+    private static final int MAX_SUFFIX_LENGTH = 96;
+
+    private ProductDocumentParser() {
+    }
+
+    public static ProductDocument parse(ByteBuffer json) throws IOException {
+        int limit = json.limit();
+        int start = JsonBytes.skipWhitespace(json, 0, limit);
+        int closing = limit - 1;
+        while (closing > start && JsonBytes.isWhitespace(json.get(closing))) {
+            closing--;
+        }
+        if (start >= closing || json.get(start) != '{' || json.get(closing) != '}') {
+            throw new IOException("Product must be a JSON object");
+        }
+
+        // Find the "id" member and the range to cut out, including one of the commas around it
+        String id = null;
+        int skusStart = -1;
+        int skusEnd = -1;
+        int removeFrom = closing;
+        int removeTo = closing;
+        int previousComma = -1;
+        int position = JsonBytes.skipWhitespace(json, start + 1, closing);
+        while (position < closing) {
+            if (json.get(position) != '"') {
+                throw new IOException("Field name expected at position " + position + " of a product");
+            }
+            int keyEnd = JsonBytes.findStringEnd(json, position, closing);
+            int colon = keyEnd < 0 ? closing : JsonBytes.skipWhitespace(json, keyEnd, closing);
+            if (colon >= closing || json.get(colon) != ':') {
+                throw new IOException("Field value expected at position " + position + " of a product");
+            }
+            int valueStart = JsonBytes.skipWhitespace(json, colon + 1, closing);
+            int valueEnd = valueStart < closing ? JsonBytes.findValueEnd(json, valueStart, closing + 1) : -1;
+            if (valueEnd < 0 || valueEnd > closing) {
+                throw new IOException("Malformed field value at position " + valueStart + " of a product");
+            }
+            int next = JsonBytes.skipWhitespace(json, valueEnd, closing);
+            boolean hasComma = next < closing && json.get(next) == ',';
+
+            if (id == null && JsonBytes.equalsAscii(json, position + 1, keyEnd - 1, ID_FIELD)) {
+                id = toString(json, valueStart, valueEnd);
+                if (hasComma) {
+                    removeFrom = position;
+                    removeTo = next + 1;
+                } else {
+                    removeFrom = previousComma >= 0 ? previousComma : position;
+                    removeTo = valueEnd;
+                }
+            }
+            if (skusStart < 0 && JsonBytes.equalsAscii(json, position + 1, keyEnd - 1, SKUS_FIELD)) {
+                skusStart = valueStart;
+                skusEnd = valueEnd;
+            }
+            if (!hasComma) {
+                break;
+            }
+            previousComma = next;
+            position = JsonBytes.skipWhitespace(json, next + 1, closing);
+        }
+
+        byte[] skuFields = skusStart < 0 ? new byte[0] : getSkuFields(json, skusStart, skusEnd);
+
+        // Copy everything except the id member and the closing brace
+        int headLength = removeFrom - start;
+        int tailLength = closing - removeTo;
+        int contentLength = headLength + tailLength;
+        byte[] source = new byte[contentLength + skuFields.length + MAX_SUFFIX_LENGTH];
+        json.duplicate().position(start).get(source, 0, headLength);
+        json.duplicate().position(removeTo).get(source, headLength, tailLength);
+        boolean isEmpty = true;
+        for (int i = 1; i < contentLength; i++) {
+            byte b = source[i];
+            if (b == '\n' || b == '\r') {
+                source[i] = ' ';
+            } else if (isEmpty && !JsonBytes.isWhitespace(b)) {
+                isEmpty = false;
+            }
+        }
+
+        // The hash covers the product content only, the sku fields and the sort key are derived from it
+        String contentHash = ContentHashes.hash(source, 0, contentLength);
+        int length = contentLength;
+        if (!isEmpty) {
+            source[length++] = ',';
+        }
+        System.arraycopy(skuFields, 0, source, length, skuFields.length);
+        length += skuFields.length;
+        String sortKey = id != null ? "\"" + SortKeys.SORT_KEY_FIELD + "\":" + SortKeys.toJson(id) + "," : "";
+        byte[] suffix = (sortKey + "\"" + ProductDocument.CONTENT_HASH_FIELD + "\":\"" + contentHash + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(suffix, 0, source, length, suffix.length);
+        return new ProductDocument(id, new BytesArray(source, 0, length + suffix.length), contentHash);
+    }
+
+    // Returns the flat sku fields as JSON members, each one followed by a comma
+    private static byte[] getSkuFields(ByteBuffer json, int start, int end) throws IOException {
+        Set<String> colors = new LinkedHashSet<>();
+        Set<String> sizes = new LinkedHashSet<>();
+        Set<String> colorSizes = new LinkedHashSet<>();
+        byte[] skus = new byte[end - start];
+        json.duplicate().position(start).get(skus);
+        try (JsonParser parser = jsonFactory.createParser(skus)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                return new byte[0];
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Skus of a product must be an array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String color = null;
+                String size = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (value == JsonToken.VALUE_STRING && COLOR_FIELD.equals(field)) {
+                        color = parser.getText();
+                    } else if (value == JsonToken.VALUE_STRING && SIZE_FIELD.equals(field)) {
+                        size = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (color != null) {
+                    colors.add(color);
+                }
+                if (size != null) {
+                    sizes.add(size);
+                }
+                if (color != null && size != null) {
+                    colorSizes.add(color + ProductDocument.SKU_COLOR_SIZE_SEPARATOR + size);
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Sku of a product must be an object");
+            }
+        }
+
+        // Written as an object, whose members without the braces are appended to the source
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        try (JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            generator.writeStartObject();
+            writeArray(generator, ProductDocument.SKU_COLORS_FIELD, colors);
+            writeArray(generator, ProductDocument.SKU_SIZES_FIELD, sizes);
+            writeArray(generator, ProductDocument.SKU_COLOR_SIZES_FIELD, colorSizes);
+            generator.writeEndObject();
+        }
+        byte[] object = output.toByteArray();
+        byte[] members = new byte[object.length - 1];
+        System.arraycopy(object, 1, members, 0, object.length - 2);
+        members[members.length - 1] = ',';
+        return members;
+    }
+
+    private static void writeArray(JsonGenerator generator, String field, Set<String> values) throws IOException {
+        generator.writeArrayFieldStart(field);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Reads only the "id" member, which is usually the first one, for finding duplicates before the product is parsed.
+     *
+     * @return JSON representation of the id like {@link ProductDocument#getId()}, null if the product has none
+     */
+    public static String readId(ByteBuffer json) throws IOException {
+        int limit = json.limit();
+        int position = JsonBytes.skipWhitespace(json, 0, limit);
+        if (position >= limit || json.get(position) != '{') {
+            throw new IOException("Product must be a JSON object");
+        }
+        position = JsonBytes.skipWhitespace(json, position + 1, limit);
+        while (position < limit && json.get(position) == '"') {
+            int keyEnd = JsonBytes.findStringEnd(json, position, limit);
+            int colon = keyEnd < 0 ? limit : JsonBytes.skipWhitespace(json, keyEnd, limit);
+            if (colon >= limit || json.get(colon) != ':') {
+                throw new IOException("Field value expected at position " + position + " of a product");
+            }
+            int valueStart = JsonBytes.skipWhitespace(json, colon + 1, limit);
+            int valueEnd = valueStart < limit ? JsonBytes.findValueEnd(json, valueStart, limit) : -1;
+            if (valueEnd < 0) {
+                throw new IOException("Malformed field value at position " + valueStart + " of a product");
+            }
+            if (JsonBytes.equalsAscii(json, position + 1, keyEnd - 1, ID_FIELD)) {
+                return toString(json, valueStart, valueEnd);
+            }
+            int next = JsonBytes.skipWhitespace(json, valueEnd, limit);
+            if (next >= limit || json.get(next) != ',') {
+                break;
+            }
+            position = JsonBytes.skipWhitespace(json, next + 1, limit);
+        }
+        return null;
+    }
+
+    private static String toString(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.duplicate().position(start).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
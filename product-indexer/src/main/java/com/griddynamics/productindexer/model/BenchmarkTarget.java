@@ -0,0 +1,8 @@
+package com.griddynamics.productindexer.model;
+
+public enum BenchmarkTarget {
+    // Bulks are sent to an in-process server which acknowledges every item, so only the indexer side is measured
+    STAND_IN,
+    // Bulks are sent to a new index on the configured cluster, which is deleted after every iteration
+    CLUSTER
+}
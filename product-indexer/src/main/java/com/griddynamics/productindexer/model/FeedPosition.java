@@ -0,0 +1,17 @@
+package com.griddynamics.productindexer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeedPosition {
+    // Name of the change log file which is being read, the files before it have been applied completely
+    private String file;
+    // Offset in the file before which every change has been applied
+    private long offset;
+    // Number of the file among the files which have been followed, counted from one, the versions of its changes start with it
+    private long fileNumber;
+}
@@ -0,0 +1,20 @@
+package com.griddynamics.productindexer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexingCheckpoint {
+    // Index which is being built
+    private String index;
+    // Hash of the bulk data file, the checkpoint is valid for the same input only
+    private String inputHash;
+    // Offset in the bulk data file before which every product has been acknowledged
+    private long offset;
+    // Documents which have failed so far, so maxFailedDocuments covers the whole build across resumes.
+    // Failures after the offset are counted again if they fail again on resume, so the count errs on the high side
+    private long failedDocuments;
+}
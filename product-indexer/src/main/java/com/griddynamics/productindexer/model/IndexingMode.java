@@ -0,0 +1,19 @@
+package com.griddynamics.productindexer.model;
+
+public enum IndexingMode {
+    // Always build a new index generation from the bulk data file
+    FULL,
+    // Apply only the changed products to the current generation, build a new one if settings, mappings or derived fields changed
+    INCREMENTAL,
+    // Build a new generation with a server-side _reindex from the current one, for settings and mappings changes like the analysis.
+    // Falls back to the bulk data file if the data or the derived fields have changed, the copied sources would be stale
+    REINDEX,
+    // Keep running and apply the changes appended to the change log to the current generation
+    FEED,
+    // Bring back the newest snapshotted generation and point the alias to it, no data is read
+    RESTORE,
+    // Write a synthetic catalog with the shape of the bulk data file, nothing is indexed
+    GENERATE,
+    // Measure parse, transform and bulk-send throughput on a catalog, against a local stand-in or a cluster
+    BENCHMARK
+}
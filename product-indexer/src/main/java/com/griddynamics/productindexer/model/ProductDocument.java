@@ -0,0 +1,74 @@
+package com.griddynamics.productindexer.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+@Data
+public class ProductDocument {
+    public static final String CONTENT_HASH_FIELD = "contentHash";
+    // Distinct colors, sizes and "color|size" pairs of the skus, copied to the product so they can be used without nested queries
+    public static final String SKU_COLORS_FIELD = "skuColors";
+    public static final String SKU_SIZES_FIELD = "skuSizes";
+    public static final String SKU_COLOR_SIZES_FIELD = "skuColorSizes";
+    public static final String SKU_COLOR_SIZE_SEPARATOR = "|";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // JSON representation of the "id" field value, e.g. "\"1\"" for a string id
+    private String id;
+    // Product JSON without the "id" field, UTF-8 encoded, with the flat sku fields, the sort key and the content hash field appended
+    private BytesReference source;
+    // Hash of the product content, used to find changed products in incremental mode
+    private String contentHash;
+    // Source decoded on the first request, only enrichers need it
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Map<String, Object> sourceAsMap;
+
+    public ProductDocument(String id, BytesReference source, String contentHash) {
+        this.id = id;
+        this.source = source;
+        this.contentHash = contentHash;
+    }
+
+    public Map<String, Object> getSourceAsMap() {
+        if (sourceAsMap == null) {
+            sourceAsMap = XContentHelper.convertToMap(source, false, XContentType.JSON).v2();
+        }
+        return sourceAsMap;
+    }
+
+    /**
+     * Appends a field to the source, the field must not be there yet. The content hash is not changed.
+     */
+    public void addField(String name, Object value) throws IOException {
+        byte[] member;
+        try {
+            member = ("," + objectMapper.writeValueAsString(name) + ":" + objectMapper.writeValueAsString(value))
+                    .getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException ex) {
+            throw new IOException("Field " + name + " can not be written as JSON", ex);
+        }
+        // The source always ends with the content hash field and the closing brace
+        ByteArrayOutputStream output = new ByteArrayOutputStream(source.length() + member.length);
+        source.slice(0, source.length() - 1).writeTo(output);
+        output.write(member);
+        output.write('}');
+        source = new BytesArray(output.toByteArray());
+        if (sourceAsMap != null) {
+            sourceAsMap.put(name, value);
+        }
+    }
+}
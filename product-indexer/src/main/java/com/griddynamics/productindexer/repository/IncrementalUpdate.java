@@ -0,0 +1,82 @@
+package com.griddynamics.productindexer.repository;
+
+import com.griddynamics.productindexer.model.ProductDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which products of the bulk data file have to be written to an existing index, by comparing their
+ * content hashes with the ones of the index. Products which are not in the bulk data file anymore are deleted.
+ */
+@Slf4j
+class IncrementalUpdate {
+
+    private final String index;
+    private final Map<String, String> existingHashes;
+    private final AtomicLong createdCnt = new AtomicLong();
+    private final AtomicLong updatedCnt = new AtomicLong();
+    private final AtomicLong unchangedCnt = new AtomicLong();
+    private long deletedCnt;
+
+    /**
+     * @param existingHashes content hashes by id of the products in the index, a concurrent map which is consumed
+     */
+    IncrementalUpdate(String index, Map<String, String> existingHashes) {
+        this.index = index;
+        this.existingHashes = existingHashes;
+    }
+
+    /**
+     * @return the request which writes the product, or null if it has not changed or can not be written
+     */
+    IndexRequest toRequest(ProductDocument document) {
+        if (document.getId() == null) {
+            log.warn("Skipping a product without id, it can not be updated incrementally.");
+            return null;
+        }
+        String existingHash = existingHashes.remove(document.getId());
+        if (document.getContentHash().equals(existingHash)) {
+            unchangedCnt.incrementAndGet();
+            return null;
+        }
+        (existingHash == null ? createdCnt : updatedCnt).incrementAndGet();
+        return new IndexRequest(index)
+                .id(document.getId())
+                .source(document.getSource(), XContentType.JSON);
+    }
+
+    /**
+     * Must be called once every product of the bulk data file has been passed to {@link #toRequest(ProductDocument)}.
+     */
+    List<DeleteRequest> toDeleteRequests() {
+        List<DeleteRequest> deleteRequests = existingHashes.keySet().stream()
+                .map(id -> new DeleteRequest(index, id))
+                .collect(Collectors.toList());
+        existingHashes.clear();
+        deletedCnt = deleteRequests.size();
+        return deleteRequests;
+    }
+
+    long getCreatedCnt() {
+        return createdCnt.get();
+    }
+
+    long getUpdatedCnt() {
+        return updatedCnt.get();
+    }
+
+    long getUnchangedCnt() {
+        return unchangedCnt.get();
+    }
+
+    long getDeletedCnt() {
+        return deletedCnt;
+    }
+}
@@ -0,0 +1,60 @@
+package com.griddynamics.productindexer.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hashes of the inputs an index generation has been built from, stored in the "_meta" of its mapping.
+ */
+@Data
+@AllArgsConstructor
+class IndexGeneration {
+    static final String META_FIELD = "_meta";
+    private static final String SETTINGS_HASH = "settingsHash";
+    private static final String MAPPINGS_HASH = "mappingsHash";
+    private static final String DERIVED_FIELDS_HASH = "derivedFieldsHash";
+    private static final String DATA_HASH = "dataHash";
+
+    private String settingsHash;
+    private String mappingsHash;
+    // Enrichers and the parser version, they decide the derived fields of the documents
+    private String derivedFieldsHash;
+    private String dataHash;
+
+    static IndexGeneration fromMeta(Map<String, Object> meta) {
+        if (meta == null) {
+            return new IndexGeneration(null, null, null, null);
+        }
+        return new IndexGeneration((String) meta.get(SETTINGS_HASH), (String) meta.get(MAPPINGS_HASH),
+                (String) meta.get(DERIVED_FIELDS_HASH), (String) meta.get(DATA_HASH));
+    }
+
+    Map<String, Object> toMeta() {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put(SETTINGS_HASH, settingsHash);
+        meta.put(MAPPINGS_HASH, mappingsHash);
+        meta.put(DERIVED_FIELDS_HASH, derivedFieldsHash);
+        meta.put(DATA_HASH, dataHash);
+        return meta;
+    }
+
+    // Only the changed products have to be applied to the other generation
+    boolean hasSameStructure(IndexGeneration other) {
+        return settingsHash != null && settingsHash.equals(other.settingsHash)
+                && mappingsHash != null && mappingsHash.equals(other.mappingsHash)
+                && derivedFieldsHash != null && derivedFieldsHash.equals(other.derivedFieldsHash);
+    }
+
+    // The sources of the other generation can be copied as they are, the settings and the mappings may differ
+    boolean hasSameDocuments(IndexGeneration other) {
+        return derivedFieldsHash != null && derivedFieldsHash.equals(other.derivedFieldsHash)
+                && dataHash != null && dataHash.equals(other.dataHash);
+    }
+
+    boolean hasSameContent(IndexGeneration other) {
+        return hasSameStructure(other) && dataHash != null && dataHash.equals(other.dataHash);
+    }
+}
@@ -0,0 +1,67 @@
+package com.griddynamics.productindexer.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.elasticsearch.common.settings.Settings;
+
+import java.io.IOException;
+
+/**
+ * Derives the bulk-load variant of the index settings and the serving settings to restore after the load.
+ * The number of shards can be overridden for all of them.
+ */
+public class IndexSettingsProfile {
+
+    static final String REFRESH_INTERVAL = "refresh_interval";
+    static final String NUMBER_OF_REPLICAS = "number_of_replicas";
+    static final String NUMBER_OF_SHARDS = "number_of_shards";
+    static final String TRANSLOG_DURABILITY = "translog.durability";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+    private static final int DEFAULT_NUMBER_OF_REPLICAS = 1;
+
+    private final ObjectNode settings;
+    private final ObjectNode indexSettings;
+
+    public IndexSettingsProfile(String settingsJson) {
+        try {
+            settings = (ObjectNode) objectMapper.readTree(settingsJson);
+        } catch (IOException | ClassCastException ex) {
+            throw new IllegalArgumentException("Index settings must be a JSON object", ex);
+        }
+        JsonNode index = settings.get("index");
+        indexSettings = index instanceof ObjectNode ? (ObjectNode) index : settings.putObject("index");
+    }
+
+    void setNumberOfShards(int numberOfShards) {
+        indexSettings.put(NUMBER_OF_SHARDS, numberOfShards);
+    }
+
+    public String getSettings() {
+        return settings.toString();
+    }
+
+    public String getLoadSettings(boolean asyncTranslog) {
+        ObjectNode loadSettings = settings.deepCopy();
+        ObjectNode loadIndexSettings = (ObjectNode) loadSettings.get("index");
+        loadIndexSettings.put(REFRESH_INTERVAL, "-1");
+        loadIndexSettings.put(NUMBER_OF_REPLICAS, 0);
+        if (asyncTranslog) {
+            loadIndexSettings.put(TRANSLOG_DURABILITY, "async");
+        }
+        return loadSettings.toString();
+    }
+
+    Settings getServingSettings() {
+        JsonNode refreshInterval = indexSettings.get(REFRESH_INTERVAL);
+        JsonNode replicas = indexSettings.get(NUMBER_OF_REPLICAS);
+        JsonNode durability = indexSettings.get(TRANSLOG_DURABILITY);
+        return Settings.builder()
+                .put("index." + REFRESH_INTERVAL, refreshInterval != null ? refreshInterval.asText() : DEFAULT_REFRESH_INTERVAL)
+                .put("index." + NUMBER_OF_REPLICAS, replicas != null ? replicas.asInt() : DEFAULT_NUMBER_OF_REPLICAS)
+                .put("index." + TRANSLOG_DURABILITY, durability != null ? durability.asText() : "request")
+                .build();
+    }
+}
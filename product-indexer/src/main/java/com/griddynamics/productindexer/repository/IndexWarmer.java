@@ -0,0 +1,156 @@
+package com.griddynamics.productindexer.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.productindexer.config.WarmUpConfig;
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
+import com.griddynamics.productsearchquery.QueryLogEntry;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Warms up a new index before the alias is moved to it. A match-all search with the facet aggregations builds
+ * the global ordinals of the facet fields, then the most recent queries of the search service's query log are
+ * replayed until the query or time budget is used up, which loads the postings and doc values they touch.
+ * <p>
+ * Failed searches are logged and skipped: a cold index is slower, not wrong, so warm-up never blocks the swap.
+ */
+@Slf4j
+class IndexWarmer {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+    private static final int DEFAULT_SIZE = 10;
+    private static final String ROTATED_SUFFIX = ".1";
+
+    private final RestHighLevelClient esClient;
+    private final ProductQueryBuilder queryBuilder;
+    private final WarmUpConfig config;
+
+    IndexWarmer(RestHighLevelClient esClient, ProductQueryBuilder queryBuilder, WarmUpConfig config) {
+        this.esClient = esClient;
+        this.queryBuilder = queryBuilder;
+        this.config = config;
+    }
+
+    void warmUp(String indexName) {
+        long deadline = System.nanoTime() + config.getMaxDuration().toNanos();
+        int failed = 0;
+
+        if (!search(indexName, new QueryLogEntry(null, 0, 0))) {
+            failed++;
+        }
+
+        List<QueryLogEntry> queries = readRecentQueries();
+        int replayed = 0;
+        while (!queries.isEmpty() && replayed < config.getMaxQueries() && System.nanoTime() < deadline) {
+            if (!search(indexName, queries.get(replayed % queries.size()))) {
+                failed++;
+            }
+            replayed++;
+        }
+        log.info("Index {} has been warmed up with {} searches replaying {} logged queries, {} searches have failed.",
+                indexName, replayed, queries.size(), failed);
+    }
+
+    // Sends the search the search service would send for the entry, an entry without text is a match-all search
+    private boolean search(String indexName, QueryLogEntry entry) {
+        try {
+            int size = entry.getSize() != null ? entry.getSize() : DEFAULT_SIZE;
+            int page = entry.getPage() != null ? entry.getPage() : 0;
+            SearchRequest request = new SearchRequest(indexName).source(queryBuilder.getSearchSource(
+                    entry.getQueryText() == null ? QueryBuilders.matchAllQuery() : queryBuilder.getQueryByText(indexName, entry.getQueryText()),
+                    size, size * page));
+            esClient.search(request, RequestOptions.DEFAULT);
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Warm-up search for '{}' has failed: {}", entry.getQueryText(), ex.getMessage());
+            return false;
+        }
+    }
+
+    // Reads the log and then the rotated log, if the log has not enough queries
+    private List<QueryLogEntry> readRecentQueries() {
+        if (isBlank(config.getQueryLog())) {
+            log.warn("No query log is configured, only the facets will be warmed up. "
+                    + "Set warmUp.queryLog to the queryLog.file of the search service.");
+            return Collections.emptyList();
+        }
+        Path path = Paths.get(config.getQueryLog());
+        Path rotatedPath = Paths.get(config.getQueryLog() + ROTATED_SUFFIX);
+        if (!Files.exists(path) && !Files.exists(rotatedPath)) {
+            log.warn("Query log {} does not exist, only the facets will be warmed up. "
+                    + "It has to be the queryLog.file of the search service.", path.toAbsolutePath());
+            return Collections.emptyList();
+        }
+
+        List<QueryLogEntry> entries = new ArrayList<>();
+        readRecentQueries(path, entries);
+        readRecentQueries(rotatedPath, entries);
+        // Oldest first, the most recent queries are replayed last
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    // Adds the entries of the log from the most recent one, reading backwards from its end so a long log is not read as a whole
+    private void readRecentQueries(Path path, List<QueryLogEntry> entries) {
+        if (entries.size() >= config.getRecentQueries() || !Files.exists(path)) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            long end = file.length();
+            byte[] tail = new byte[0];
+            while (end > 0 && entries.size() < config.getRecentQueries()) {
+                int chunkSize = (int) Math.min(READ_CHUNK_SIZE, end);
+                byte[] chunk = new byte[chunkSize + tail.length];
+                file.seek(end - chunkSize);
+                file.readFully(chunk, 0, chunkSize);
+                System.arraycopy(tail, 0, chunk, chunkSize, tail.length);
+                end -= chunkSize;
+
+                // Complete lines are parsed from the last one, the first one may continue in the previous chunk
+                int lineEnd = chunk.length;
+                for (int i = chunk.length - 1; i >= 0 && entries.size() < config.getRecentQueries(); i--) {
+                    if (chunk[i] == '\n' || (i == 0 && end == 0)) {
+                        int lineStart = chunk[i] == '\n' ? i + 1 : i;
+                        addEntry(entries, chunk, lineStart, lineEnd);
+                        lineEnd = i;
+                    }
+                }
+                tail = lineEnd > 0 ? Arrays.copyOf(chunk, lineEnd) : new byte[0];
+            }
+        } catch (IOException ex) {
+            log.warn("Query log {} can not be read: {}", path, ex.getMessage());
+        }
+    }
+
+    private static void addEntry(List<QueryLogEntry> entries, byte[] bytes, int start, int end) {
+        String line = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+        if (line.isEmpty()) {
+            return;
+        }
+        try {
+            QueryLogEntry entry = objectMapper.readValue(line, QueryLogEntry.class);
+            if (!isBlank(entry.getQueryText())) {
+                entries.add(entry);
+            }
+        } catch (IOException ex) {
+            log.debug("Skipping a query log line which can not be parsed: {}", ex.getMessage());
+        }
+    }
+}
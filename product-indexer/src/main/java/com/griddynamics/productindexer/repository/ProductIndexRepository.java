@@ -2,4 +2,14 @@ package com.griddynamics.productindexer.repository;
 
 public interface ProductIndexRepository {
     void recreateIndex();
+
+    /**
+     * Applies the changes from the change log to the current index until the application is stopped.
+     */
+    void followChangeFeed();
+
+    /**
+     * Restores the newest snapshotted generation if it does not exist and points the alias to it.
+     */
+    void restoreIndex();
 }
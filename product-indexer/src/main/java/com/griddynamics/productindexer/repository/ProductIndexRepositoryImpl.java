@@ -1,41 +1,82 @@
 package com.griddynamics.productindexer.repository;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.DuplicateHandlingConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.config.PipelineConfig;
+import com.griddynamics.esingestion.config.ReindexConfig;
+import com.griddynamics.esingestion.config.SnapshotConfig;
+import com.griddynamics.esingestion.index.IndexAliasManager;
+import com.griddynamics.esingestion.index.Reindexer;
+import com.griddynamics.esingestion.index.SnapshotManager;
+import com.griddynamics.esingestion.ingest.BulkIngester;
+import com.griddynamics.esingestion.ingest.ByteWindows;
+import com.griddynamics.esingestion.ingest.CheckpointStore;
+import com.griddynamics.esingestion.ingest.Compression;
+import com.griddynamics.esingestion.ingest.DocumentEnricher;
+import com.griddynamics.esingestion.ingest.DuplicateIdFilter;
+import com.griddynamics.esingestion.ingest.IndexingPipeline;
+import com.griddynamics.esingestion.ingest.JsonArraySplitter;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import com.griddynamics.esingestion.model.DuplicatePolicy;
+import com.griddynamics.productindexer.config.ChangeFeedConfig;
+import com.griddynamics.productindexer.config.EnrichmentConfig;
+import com.griddynamics.productindexer.config.IndexerConfig;
+import com.griddynamics.productindexer.config.LoadProfileConfig;
+import com.griddynamics.productindexer.config.ShardingConfig;
+import com.griddynamics.productindexer.config.WarmUpConfig;
+import com.griddynamics.productindexer.ingest.ChangeFeedIndexer;
+import com.griddynamics.productindexer.ingest.ContentHashes;
+import com.griddynamics.productindexer.ingest.ProductDocumentParser;
+import com.griddynamics.productindexer.model.IndexingCheckpoint;
+import com.griddynamics.productindexer.model.IndexingMode;
+import com.griddynamics.productindexer.model.ProductDocument;
+import com.griddynamics.productsearchquery.FacetSnapshot;
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.action.DocWriteRequest;
-import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
-import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
-import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.client.IndicesClient;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.client.indices.CreateIndexRequest;
-import org.elasticsearch.client.indices.CreateIndexResponse;
-import org.elasticsearch.client.indices.GetIndexRequest;
-import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.client.indices.GetMappingsResponse;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
-import static org.apache.commons.lang3.StringUtils.isNotEmpty;
-import static org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 @Component
 @Slf4j
@@ -44,13 +85,51 @@ public class ProductIndexRepositoryImpl implements ProductIndexRepository {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final int MAX_ALLOWED_INDICES_NUMBER = 3;
+    private static final int SCROLL_SIZE = 5000;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final long CHANGE_FEED_STOP_TIMEOUT_MILLIS = 30_000;
 
     @Autowired
     private RestHighLevelClient esClient;
+    @Autowired
+    private IndexerConfig indexerConfig;
+    @Autowired
+    private BulkConfig bulkConfig;
+    @Autowired
+    private FailureHandlingConfig failureConfig;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private DuplicateHandlingConfig duplicateConfig;
+    @Autowired
+    private SnapshotConfig snapshotConfig;
+    @Autowired
+    private ReindexConfig reindexConfig;
+    @Autowired
+    private LoadProfileConfig loadProfileConfig;
+    @Autowired
+    private ShardingConfig shardingConfig;
+    @Autowired
+    private ChangeFeedConfig changeFeedConfig;
+    @Autowired
+    private WarmUpConfig warmUpConfig;
+    @Autowired
+    private EnrichmentConfig enrichmentConfig;
+    @Autowired
+    private List<DocumentEnricher<ProductDocument>> availableEnrichers;
+    @Autowired
+    private ProductQueryBuilder productQueryBuilder;
+    @Autowired
+    private IndexingMetrics metrics;
 
     @Value("${com.griddynamics.product.indexer.index}")
     private String aliasName;
 
+    private IndexAliasManager aliasManager;
+    private SnapshotManager snapshotManager;
+    private List<DocumentEnricher<ProductDocument>> enrichers;
+    private volatile ChangeFeedIndexer changeFeed;
+
 
     // Mappings, settings and bulk data files
     @Value("${com.griddynamics.product.indexer.files.settings:classpath:elastic/productindex/settings.json}")
@@ -61,257 +140,441 @@ public class ProductIndexRepositoryImpl implements ProductIndexRepository {
     private Resource productsBulkInsertDataFile;
 
 
+    @PostConstruct
+    public void init() {
+        aliasManager = new IndexAliasManager(esClient, aliasName);
+        snapshotManager = new SnapshotManager(esClient, aliasName, snapshotConfig);
+        enrichers = enrichmentConfig.select(availableEnrichers);
+    }
+
     @Override
-    public void recreateIndex() {
+    public void followChangeFeed() {
+        if (isBlank(changeFeedConfig.getPath())) {
+            throw new IllegalArgumentException("Change log path must be set in feed mode");
+        }
+        // Bulks have a fixed size, the feed flushes them itself when they are old enough
+        BulkConfig feedBulkConfig = new BulkConfig();
+        BeanUtils.copyProperties(bulkConfig, feedBulkConfig);
+        feedBulkConfig.setInitialActions(changeFeedConfig.getBatchSize());
+        feedBulkConfig.setMinActions(changeFeedConfig.getBatchSize());
+        feedBulkConfig.setMaxActions(changeFeedConfig.getBatchSize());
+        feedBulkConfig.setFlushInterval(changeFeedConfig.getMaxLatency());
+
+        // Changes are written through the alias, so they always go to the current index
+        metrics.setIndex(aliasName);
+        changeFeed = new ChangeFeedIndexer(changeFeedConfig, aliasName,
+                new BulkIngester(esClient, feedBulkConfig, failureConfig, metrics), metrics, enrichers);
+        try {
+            changeFeed.run();
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during reading the change log " + changeFeedConfig.getPath(), ex);
+        }
+    }
 
-        String indexNameWithDateTime = this.aliasName + "_" + getCurrentDateTime();
-        String settings = getStrFromResource(productsSettingsFile);
-        String mappings = getStrFromResource(productsMappingsFile);
+    @PreDestroy
+    public void stopChangeFeed() throws InterruptedException {
+        if (changeFeed != null) {
+            changeFeed.stop(CHANGE_FEED_STOP_TIMEOUT_MILLIS);
+        }
+    }
 
-        createIndex(indexNameWithDateTime, settings, mappings);
+    @Override
+    public void restoreIndex() {
+        String snapshot = snapshotManager.getLatestSnapshot();
+        if (snapshot == null) {
+            throw new RuntimeException("There is no successful snapshot of alias " + aliasName + " in repository "
+                    + snapshotConfig.getRepository());
+        }
+        // Snapshots have the name of their generation
+        metrics.setIndex(snapshot);
+        if (aliasManager.indexExists(snapshot)) {
+            log.info("Index {} of the newest snapshot exists, it is not restored.", snapshot);
+        } else {
+            metrics.timePhase(IndexingMetrics.PHASE_RESTORE, () -> snapshotManager.restore(snapshot));
+        }
+        metrics.timePhase(IndexingMetrics.PHASE_ALIAS_SWAP, () -> aliasManager.moveAliasTo(snapshot));
+    }
 
-        processBulkInsertDataFromJsonArray(productsBulkInsertDataFile, indexNameWithDateTime);
+    @Override
+    public void recreateIndex() {
+        String settings = getStrFromResource(productsSettingsFile);
+        String mappings = getStrFromResource(productsMappingsFile);
+        // Enrichers and the parser decide which derived fields the documents have, the sources change with them
+        IndexGeneration generation = new IndexGeneration(ContentHashes.hash(settings), ContentHashes.hash(mappings),
+                ContentHashes.hash(enrichmentConfig.getEnrichers() + "/" + ProductDocumentParser.DERIVED_FIELDS_VERSION),
+                getHashFromResource(productsBulkInsertDataFile));
+
+        if (indexerConfig.getMode() == IndexingMode.INCREMENTAL) {
+            String currentIndex = aliasManager.getCurrentIndex();
+            if (currentIndex != null) {
+                IndexGeneration currentGeneration = getIndexGeneration(currentIndex);
+                if (generation.hasSameContent(currentGeneration)) {
+                    log.info("Settings, mappings and bulk data have not changed since index {} has been built, nothing to do.", currentIndex);
+                    return;
+                }
+                if (generation.hasSameStructure(currentGeneration)) {
+                    metrics.setIndex(currentIndex);
+                    metrics.timePhase(IndexingMetrics.PHASE_LOAD, () -> updateIndexIncrementally(currentIndex, generation));
+                    return;
+                }
+                log.info("Settings, mappings or derived fields have changed since index {} has been built, a new index will be built.", currentIndex);
+            }
+        }
 
-        IndicesAliasesRequest request = new IndicesAliasesRequest();
-        AliasActions aliasAction =
-                new AliasActions(AliasActions.Type.ADD)
-                        .index(indexNameWithDateTime)
-                        .alias(aliasName);
-        request.addAliasAction(aliasAction);
-        try {
-            removeAliasFromRemainingIndices();
-            esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (indexerConfig.getMode() == IndexingMode.REINDEX) {
+            String currentIndex = aliasManager.getCurrentIndex();
+            if (currentIndex != null && generation.hasSameDocuments(getIndexGeneration(currentIndex))) {
+                buildNewIndex(settings, mappings, generation, currentIndex);
+                return;
+            }
+            // Copying the current index would lose the changes of the bulk data file, or keep stale derived fields
+            log.info("{}, the new index will be built from the bulk data file.", currentIndex == null
+                    ? "Alias " + aliasName + " has no index to reindex from"
+                    : "Bulk data, enrichers or derived fields have changed since index " + currentIndex + " has been built");
         }
 
-        deleteAllExceptLastThreeIndices();
+        buildNewIndex(settings, mappings, generation, null);
     }
 
-    private void removeAliasFromRemainingIndices() throws IOException {
-        IndicesAliasesRequest request = new IndicesAliasesRequest();
-        Set<String> indicesFromAliasName = getIndicesFromAliasName(aliasName);
-        if (indicesFromAliasName.size() > 0) {
-            indicesFromAliasName.forEach(index -> {
-                        AliasActions aliasAction =
-                                new AliasActions(AliasActions.Type.REMOVE)
-                                        .index(index)
-                                        .alias(aliasName);
-                        request.addAliasAction(aliasAction);
-                    }
-            );
-            esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+    /**
+     * @param reindexFrom index whose documents are copied by the cluster, or null to load the bulk data file
+     */
+    private void buildNewIndex(String settings, String mappings, IndexGeneration generation, String reindexFrom) {
+        CheckpointStore<IndexingCheckpoint> checkpointStore = new CheckpointStore<>(indexerConfig.getCheckpointFile(), IndexingCheckpoint.class);
+        // A reindex is not resumable, it is simply started again
+        IndexingCheckpoint checkpoint = reindexFrom == null ? getResumableCheckpoint(checkpointStore, generation) : null;
+        String indexNameWithDateTime = checkpoint != null ? checkpoint.getIndex() : aliasManager.newIndexName();
+        metrics.setIndex(indexNameWithDateTime);
+
+        IndexSettingsProfile settingsProfile = new IndexSettingsProfile(settings);
+        if (checkpoint == null) {
+            ShardSizing sizing = null;
+            if (shardingConfig.isEnabled()) {
+                sizing = ShardSizing.estimate(getDataSizeOfResource(productsBulkInsertDataFile), shardingConfig);
+                settingsProfile.setNumberOfShards(sizing.getNumberOfShards());
+                log.info("Index {} is estimated at {} bytes from {} bytes of bulk data, it will have {} shard(s).", indexNameWithDateTime,
+                        sizing.getEstimatedIndexSizeBytes(), sizing.getDataSizeBytes(), sizing.getNumberOfShards());
+            }
+            String mappingsWithMeta = withGenerationMeta(mappings, generation, sizing);
+            String createSettings = loadProfileConfig.isEnabled()
+                    ? settingsProfile.getLoadSettings(loadProfileConfig.isAsyncTranslog())
+                    : settingsProfile.getSettings();
+            metrics.timePhase(IndexingMetrics.PHASE_CREATE_INDEX, () -> aliasManager.createIndex(indexNameWithDateTime, createSettings, mappingsWithMeta));
+            if (reindexFrom == null) {
+                checkpointStore.save(new IndexingCheckpoint(indexNameWithDateTime, generation.getDataHash(), 0, 0));
+            }
+        } else {
+            log.info("Resuming loading of index {} from offset {} of the bulk data file, {} documents have failed before.",
+                    indexNameWithDateTime, checkpoint.getOffset(), checkpoint.getFailedDocuments());
         }
-    }
 
-    private void deleteAllExceptLastThreeIndices() {
         try {
-            Set<String> indicesFromAliasName = getIndicesFromPattern(aliasName + "_*");
-            List<String> collect = new ArrayList<>(indicesFromAliasName);
-            collect.sort(Comparator.comparing(String::toString));
-            if (collect.size() > MAX_ALLOWED_INDICES_NUMBER) {
-                List<String> indicesSorted = collect.subList(0, collect.size() - MAX_ALLOWED_INDICES_NUMBER);
-                indicesSorted.forEach(indexFromSet -> {
-                    DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest(indexFromSet);
-
-                    try {
-                        esClient.indices().delete(deleteIndexRequest, RequestOptions.DEFAULT);
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                });
+            if (reindexFrom != null) {
+                metrics.timePhase(IndexingMetrics.PHASE_LOAD, () -> new Reindexer(esClient, reindexConfig).reindex(reindexFrom, indexNameWithDateTime));
+            } else {
+                metrics.timePhase(IndexingMetrics.PHASE_LOAD, () -> processBulkInsertDataFromJsonArray(productsBulkInsertDataFile, indexNameWithDateTime,
+                        checkpoint, (offset, failedDocuments) -> checkpointStore.save(
+                                new IndexingCheckpoint(indexNameWithDateTime, generation.getDataHash(), offset, failedDocuments))));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (loadProfileConfig.isEnabled()) {
+                metrics.timePhase(IndexingMetrics.PHASE_PREPARE_SERVING, () -> prepareLoadedIndexForServing(indexNameWithDateTime, settingsProfile));
+            }
+            if (indexerConfig.isFacetSnapshot()) {
+                metrics.timePhase(IndexingMetrics.PHASE_FACET_SNAPSHOT,
+                        () -> putIndexMeta(indexNameWithDateTime, getFacetSnapshotMeta(indexNameWithDateTime)));
+            }
+        } catch (RuntimeException ex) {
+            // Never leave a half-written index around, it must not get the alias on the next run either.
+            // Only a run which has died without getting here can be resumed.
+            aliasManager.deleteIndex(indexNameWithDateTime);
+            if (reindexFrom == null) {
+                checkpointStore.delete();
+            }
+            throw ex;
         }
-    }
 
-    private static String getCurrentDateTime() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-        return dateFormat.format(new Date());
+        if (warmUpConfig.isEnabled()) {
+            metrics.timePhase(IndexingMetrics.PHASE_WARM_UP,
+                    () -> new IndexWarmer(esClient, productQueryBuilder, warmUpConfig).warmUp(indexNameWithDateTime));
+        }
+        metrics.timePhase(IndexingMetrics.PHASE_ALIAS_SWAP, () -> aliasManager.moveAliasTo(indexNameWithDateTime));
+        checkpointStore.delete();
+        if (snapshotConfig.isEnabled()) {
+            // Taken with the serving settings and the generation meta, so a restored index can be updated incrementally
+            metrics.timePhase(IndexingMetrics.PHASE_SNAPSHOT, () -> snapshotManager.snapshot(indexNameWithDateTime));
+            snapshotManager.deleteAllExceptLast(snapshotConfig.getKeep());
+        }
+        metrics.timePhase(IndexingMetrics.PHASE_CLEANUP, () -> aliasManager.deleteAllExceptLast(MAX_ALLOWED_INDICES_NUMBER));
     }
 
-    private Set<String> getIndicesFromAliasName(String aliasName) throws IOException {
-        IndicesClient iac = esClient.indices();
-
-        Map<String, Set<AliasMetaData>> map = iac.getAlias(new GetAliasesRequest(aliasName),
-                RequestOptions.DEFAULT).getAliases();
+    // Returns the checkpoint of an unfinished index built from the same input, or cleans up after a stale one
+    private IndexingCheckpoint getResumableCheckpoint(CheckpointStore<IndexingCheckpoint> checkpointStore, IndexGeneration generation) {
+        IndexingCheckpoint checkpoint = checkpointStore.load();
+        if (checkpoint == null) {
+            return null;
+        }
+        String index = checkpoint.getIndex();
+        boolean indexExists = aliasManager.indexExists(index);
+        if (indexExists && generation.getDataHash().equals(checkpoint.getInputHash())
+                && generation.hasSameContent(getIndexGeneration(index))) {
+            return checkpoint;
+        }
 
-        return map.keySet();
+        log.info("Checkpoint of index {} does not match the current settings, mappings or bulk data, a new index will be built.", index);
+        if (indexExists && !index.equals(aliasManager.getCurrentIndex())) {
+            aliasManager.deleteIndex(index);
+        }
+        checkpointStore.delete();
+        return null;
     }
 
-    private Set<String> getIndicesFromPattern(String pattern) throws IOException {
-        IndicesClient iac = esClient.indices();
-
-        GetIndexRequest getIndexRequest = new GetIndexRequest(pattern);
-        return Arrays.stream(iac.get(getIndexRequest, RequestOptions.DEFAULT).getIndices()).collect(Collectors.toSet());
+    private void updateIndexIncrementally(String indexName, IndexGeneration generation) {
+        try (JsonArraySplitter splitter = new JsonArraySplitter(ByteWindows.open(productsBulkInsertDataFile, 0));
+             BulkIngester bulkIngester = new BulkIngester(esClient, bulkConfig, failureConfig, metrics)) {
+            Map<String, String> existingHashes = getContentHashes(indexName);
+            log.info("Updating index {} incrementally, it contains {} products.", indexName, existingHashes.size());
+            if (duplicateConfig.getPolicy() == DuplicatePolicy.LAST_WINS) {
+                // Versions by offset would conflict with the versions of the documents already in the index
+                log.warn("Products with the same id are applied in the order their bulks complete when updating an index incrementally.");
+            }
+            DuplicateIdFilter documents = new DuplicateIdFilter(splitter, ProductDocumentParser::readId, duplicateConfig, bulkIngester, indexName, metrics);
+            IncrementalUpdate update = new IncrementalUpdate(indexName, existingHashes);
+
+            long requestCnt = new IndexingPipeline<>(pipelineConfig, bulkIngester, metrics, ProductDocumentParser::parse, enrichers)
+                    .run(documents, update::toRequest);
+
+            // Products which are not in the bulk data file anymore
+            update.toDeleteRequests().forEach(bulkIngester::add);
+            bulkIngester.close();
+            log.info("Index {} has been updated incrementally from {} products: {} created, {} updated, {} unchanged, {} deleted.",
+                    indexName, requestCnt, update.getCreatedCnt(), update.getUpdatedCnt(), update.getUnchangedCnt(), update.getDeletedCnt());
+            logDuplicates(documents);
+            logBulkResult(bulkIngester, update.getCreatedCnt() + update.getUpdatedCnt() + update.getDeletedCnt(), 0);
+
+            if (bulkIngester.getFailedActions() == 0) {
+                // The data hash is recorded only when everything has been applied, so that a failed run is retried.
+                // The facet snapshot goes with it, the counts have changed with the products
+                Map<String, Object> meta = generation.toMeta();
+                if (indexerConfig.isFacetSnapshot()) {
+                    meta.putAll(getFacetSnapshotMeta(indexName));
+                }
+                putIndexMeta(indexName, meta);
+            }
+        } catch (IOException ex) {
+            log.error("An exception occurred during incremental index update", ex);
+            throw new RuntimeException(ex);
+        }
+    }
 
+    private Map<String, String> getContentHashes(String indexName) throws IOException {
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        SearchSourceBuilder ssb = new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .fetchSource(false)
+                .docValueField(ProductDocument.CONTENT_HASH_FIELD)
+                .sort(FieldSortBuilder.DOC_FIELD_NAME)
+                .size(SCROLL_SIZE);
+        SearchRequest searchRequest = new SearchRequest(indexName).source(ssb).scroll(SCROLL_KEEP_ALIVE);
+
+        SearchResponse searchResponse = esClient.search(searchRequest, RequestOptions.DEFAULT);
+        String scrollId = searchResponse.getScrollId();
+        try {
+            while (searchResponse.getHits().getHits().length > 0) {
+                for (SearchHit hit : searchResponse.getHits().getHits()) {
+                    DocumentField contentHash = hit.field(ProductDocument.CONTENT_HASH_FIELD);
+                    hashes.put(hit.getId(), contentHash != null ? contentHash.getValue() : "");
+                }
+                searchResponse = esClient.scroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+                scrollId = searchResponse.getScrollId();
+            }
+        } finally {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            esClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+        }
+        return hashes;
     }
 
-    private void createIndex(String indexName, String settings, String mappings) {
-        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName)
-                .mapping(mappings, XContentType.JSON)
-                .settings(settings, XContentType.JSON);
+    private IndexGeneration getIndexGeneration(String indexName) {
+        return IndexGeneration.fromMeta(getIndexMeta(indexName));
+    }
 
-        CreateIndexResponse createIndexResponse;
+    private Map<String, Object> getIndexMeta(String indexName) {
         try {
-            createIndexResponse = esClient.indices().create(createIndexRequest, RequestOptions.DEFAULT);
+            GetMappingsResponse response = esClient.indices().getMapping(new GetMappingsRequest().indices(indexName), RequestOptions.DEFAULT);
+            MappingMetaData mapping = response.mappings().get(indexName);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> meta = mapping != null ? (Map<String, Object>) mapping.getSourceAsMap().get(IndexGeneration.META_FIELD) : null;
+            return meta;
         } catch (IOException ex) {
-            throw new RuntimeException("An error occurred during creating ES index.", ex);
+            throw new RuntimeException("An error occurred during getting mappings of index " + indexName, ex);
         }
+    }
 
-        if (!createIndexResponse.isAcknowledged()) {
-            throw new RuntimeException("Creating index not acknowledged for indexName: " + indexName);
-        } else {
-            log.info("Index {} has been created.", indexName);
+    private void putIndexMeta(String indexName, Map<String, Object> entries) {
+        // "_meta" is replaced as a whole, so the other entries (e.g. shard sizing) are carried over
+        Map<String, Object> meta = new LinkedHashMap<>();
+        Map<String, Object> currentMeta = getIndexMeta(indexName);
+        if (currentMeta != null) {
+            meta.putAll(currentMeta);
+        }
+        meta.putAll(entries);
+        Map<String, Object> source = new HashMap<>();
+        source.put(IndexGeneration.META_FIELD, meta);
+        try {
+            esClient.indices().putMapping(new PutMappingRequest(indexName).source(source), RequestOptions.DEFAULT);
+        } catch (IOException ex) {
+            throw new RuntimeException("An error occurred during updating the meta of index " + indexName, ex);
         }
     }
 
-    private static String getStrFromResource(Resource resource) {
+    // Runs the facet aggregations of the search service once over the whole index
+    private Map<String, Object> getFacetSnapshotMeta(String indexName) {
         try {
-            if (!resource.exists()) {
-                throw new IllegalArgumentException("File not found: " + resource.getFilename());
-            }
-            return Resources.toString(resource.getURL(), Charsets.UTF_8);
+            esClient.indices().refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+            SearchSourceBuilder ssb = new SearchSourceBuilder()
+                    .query(QueryBuilders.matchAllQuery())
+                    .size(0)
+                    .trackTotalHits(true);
+            productQueryBuilder.createAggs().forEach(ssb::aggregation);
+            SearchResponse searchResponse = esClient.search(new SearchRequest(indexName).source(ssb), RequestOptions.DEFAULT);
+
+            FacetSnapshot snapshot = new FacetSnapshot(searchResponse.getHits().getTotalHits().value,
+                    productQueryBuilder.parseFacets(searchResponse.getAggregations()), System.currentTimeMillis());
+            log.info("Facet snapshot of index {} has been computed over {} products in {} ms.", indexName,
+                    snapshot.getTotalHits(), searchResponse.getTook().millis());
+            Map<String, Object> meta = new HashMap<>();
+            meta.put(FacetSnapshot.META_FIELD, objectMapper.convertValue(snapshot, Map.class));
+            return meta;
         } catch (IOException ex) {
-            throw new IllegalArgumentException("Can not read resource file: " + resource.getFilename(), ex);
+            throw new RuntimeException("An error occurred during computing the facet snapshot of index " + indexName, ex);
         }
     }
 
-    private void processBulkInsertDataFromJsonArray(Resource bulkInsertDataFile, String indexNameWithDateTime) {
-        int requestCnt = 0;
+    private static String withGenerationMeta(String mappings, IndexGeneration generation, ShardSizing sizing) {
         try {
-            BulkRequest bulkRequest = new BulkRequest();
-            BufferedReader br = new BufferedReader(new InputStreamReader(bulkInsertDataFile.getInputStream()));
-            br.readLine();
-            String line;
-            while (!(line = br.readLine()).equals("]")) {
-                requestCnt++;
-                IndexRequest indexRequest;
-                if (line.charAt(line.length() - 1) == ',') {
-                    indexRequest = createIndexRequestFromJson(StringUtils.chop(line), indexNameWithDateTime);
-                } else {
-                    indexRequest = createIndexRequestFromJson(line, indexNameWithDateTime);
-                }
-                if (indexRequest != null) {
-                    bulkRequest.add(indexRequest);
-                }
+            ObjectNode mappingsNode = (ObjectNode) objectMapper.readTree(mappings);
+            Map<String, Object> meta = generation.toMeta();
+            if (sizing != null) {
+                meta.put(ShardSizing.META_FIELD, sizing.toMeta());
             }
+            mappingsNode.set(IndexGeneration.META_FIELD, objectMapper.valueToTree(meta));
+            return mappingsNode.toString();
+        } catch (IOException | ClassCastException ex) {
+            throw new IllegalArgumentException("Mappings must be a JSON object", ex);
+        }
+    }
 
-            BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-            if (bulkResponse.getItems().length != requestCnt) {
-                log.warn("Only {} out of {} requests have been processed in a bulk request.", bulkResponse.getItems().length, requestCnt);
-            } else {
-                log.info("{} requests have been processed in a bulk request.", bulkResponse.getItems().length);
+    private void prepareLoadedIndexForServing(String indexName, IndexSettingsProfile settingsProfile) {
+        try {
+            IndicesClient indices = esClient.indices();
+            indices.putSettings(new UpdateSettingsRequest(indexName).settings(settingsProfile.getServingSettings()), RequestOptions.DEFAULT);
+            indices.refresh(new RefreshRequest(indexName), RequestOptions.DEFAULT);
+            log.info("Serving settings have been restored for index {}.", indexName);
+
+            if (loadProfileConfig.getMaxNumSegments() > 0) {
+                indices.forcemerge(new ForceMergeRequest(indexName).maxNumSegments(loadProfileConfig.getMaxNumSegments()), RequestOptions.DEFAULT);
+                log.info("Index {} has been force merged to {} segment(s).", indexName, loadProfileConfig.getMaxNumSegments());
             }
 
-            if (bulkResponse.hasFailures()) {
-                log.warn("Bulk data processing has failures:\n{}", bulkResponse.buildFailureMessage());
+            ClusterHealthRequest healthRequest = new ClusterHealthRequest(indexName)
+                    .waitForGreenStatus()
+                    .timeout(TimeValue.timeValueMillis(loadProfileConfig.getGreenTimeout().toMillis()));
+            ClusterHealthResponse healthResponse = esClient.cluster().health(healthRequest, RequestOptions.DEFAULT);
+            if (healthResponse.isTimedOut()) {
+                throw new RuntimeException("Index " + indexName + " has not become green in " + loadProfileConfig.getGreenTimeout()
+                        + ", current status: " + healthResponse.getStatus());
             }
         } catch (IOException ex) {
-            log.error("An exception occurred during bulk data processing", ex);
-            throw new RuntimeException(ex);
+            throw new RuntimeException("An error occurred during preparing index " + indexName + " for serving.", ex);
         }
     }
 
-    private IndexRequest createIndexRequestFromJson(String line, String indexNameWithDateTime) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        DocWriteRequest.OpType opType = DocWriteRequest.OpType.CREATE;
-        String esId = null;
-        String lineWithoutId = null;
-        boolean isOk = true;
-
+    private static String getStrFromResource(Resource resource) {
         try {
-            JsonNode jsonNode = objectMapper.readTree(line);
-            esId = jsonNode.get("id").toString();
-            ObjectNode objectNode = (ObjectNode) jsonNode;
-            objectNode.remove("id");
-            lineWithoutId = objectNode.toString();
-
+            if (!resource.exists()) {
+                throw new IllegalArgumentException("File not found: " + resource.getFilename());
+            }
+            return Resources.toString(resource.getURL(), Charsets.UTF_8);
         } catch (IOException ex) {
-            isOk = false;
+            throw new IllegalArgumentException("Can not read resource file: " + resource.getFilename(), ex);
         }
+    }
 
-        if (isOk) {
-            return new IndexRequest(indexNameWithDateTime)
-                    .id(esId)
-                    .opType(opType)
-                    .source(lineWithoutId, XContentType.JSON);
-        } else {
-            return null;
+    // Size of the data in a resource, estimated for compressed files
+    private long getDataSizeOfResource(Resource resource) {
+        try {
+            long size = resource.contentLength();
+            boolean compressed = Compression.detect(resource.getInputStream()) != Compression.NONE;
+            return compressed ? (long) (size * shardingConfig.getCompressionRatio()) : size;
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can not read resource file: " + resource.getFilename(), ex);
         }
     }
 
-    private void processBulkInsertData(Resource bulkInsertDataFile, String indexNameWithDateTime) {
-        int requestCnt = 0;
+    private static String getHashFromResource(Resource resource) {
         try {
-            BulkRequest bulkRequest = new BulkRequest();
-            BufferedReader br = new BufferedReader(new InputStreamReader(bulkInsertDataFile.getInputStream()));
-
-            while (br.ready()) {
-                String line1 = br.readLine(); // action_and_metadata
-                if (isNotEmpty(line1) && br.ready()) {
-                    requestCnt++;
-                    String line2 = br.readLine();
-                    IndexRequest indexRequest = createIndexRequestFromBulkData(line1, line2, indexNameWithDateTime);
-                    if (indexRequest != null) {
-                        bulkRequest.add(indexRequest);
-                    }
-                }
-            }
-
-            BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-            if (bulkResponse.getItems().length != requestCnt) {
-                log.warn("Only {} out of {} requests have been processed in a bulk request.", bulkResponse.getItems().length, requestCnt);
-            } else {
-                log.info("{} requests have been processed in a bulk request.", bulkResponse.getItems().length);
-            }
+            return ContentHashes.hash(resource::getInputStream);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can not read resource file: " + resource.getFilename(), ex);
+        }
+    }
 
-            if (bulkResponse.hasFailures()) {
-                log.warn("Bulk data processing has failures:\n{}", bulkResponse.buildFailureMessage());
-            }
+    private void processBulkInsertDataFromJsonArray(Resource bulkInsertDataFile, String indexNameWithDateTime,
+                                                    IndexingCheckpoint resumeFrom, BiConsumer<Long, Long> checkpointListener) {
+        long startOffset = resumeFrom != null ? resumeFrom.getOffset() : 0;
+        long failedBefore = resumeFrom != null ? resumeFrom.getFailedDocuments() : 0;
+        // Products after the checkpoint may have been indexed already, so they are overwritten when resuming
+        DocWriteRequest.OpType opType = resumeFrom != null ? DocWriteRequest.OpType.INDEX : DocWriteRequest.OpType.CREATE;
+        try (JsonArraySplitter splitter = new JsonArraySplitter(ByteWindows.open(bulkInsertDataFile, startOffset), startOffset > 0);
+             BulkIngester bulkIngester = new BulkIngester(esClient, bulkConfig, failureConfig, metrics)) {
+            // The dead letters of the resumed run are kept
+            bulkIngester.setAppendDeadLetters(resumeFrom != null);
+            DuplicateIdFilter documents = new DuplicateIdFilter(splitter, ProductDocumentParser::readId, duplicateConfig,
+                    bulkIngester, indexNameWithDateTime, metrics);
+            IndexingPipeline<ProductDocument> pipeline = new IndexingPipeline<>(pipelineConfig, bulkIngester, metrics,
+                    ProductDocumentParser::parse, enrichers);
+            pipeline.setVersionByOffset(duplicateConfig.getPolicy() == DuplicatePolicy.LAST_WINS);
+            long requestCnt = pipeline.run(documents, document -> createIndexRequest(document, indexNameWithDateTime, opType),
+                    offset -> checkpointListener.accept(offset, failedBefore + bulkIngester.getFailedActions()));
+            bulkIngester.close();
+            logDuplicates(documents);
+            logBulkResult(bulkIngester, requestCnt, failedBefore);
         } catch (IOException ex) {
             log.error("An exception occurred during bulk data processing", ex);
             throw new RuntimeException(ex);
         }
     }
 
-    private IndexRequest createIndexRequestFromBulkData(String line1, String line2, String indexNameWithDateTime) {
-        DocWriteRequest.OpType opType = null;
-        String esIndexName = null;
-        String esId = null;
-        boolean isOk = true;
-
-        try {
-            String esOpType = objectMapper.readTree(line1).fieldNames().next();
-            opType = DocWriteRequest.OpType.fromString(esOpType);
-
-            JsonNode indexJsonNode = objectMapper.readTree(line1).iterator().next().get("_index");
-            esIndexName = (indexJsonNode != null ? indexJsonNode.textValue() : indexNameWithDateTime);
-
-            JsonNode idJsonNode = objectMapper.readTree(line1).iterator().next().get("_id");
-            esId = (idJsonNode != null ? idJsonNode.textValue() : null);
-        } catch (IOException | IllegalArgumentException ex) {
-            log.warn("An exception occurred during parsing action_and_metadata line in the bulk data file:\n{}\nwith a message:\n{}", line1, ex.getMessage());
-            isOk = false;
+    private void logDuplicates(DuplicateIdFilter documents) {
+        if (documents.getDuplicates() > 0) {
+            log.warn("{} products have an id which has been read before, they have been handled as {}; {} distinct ids.",
+                    documents.getDuplicates(), duplicateConfig.getPolicy(), documents.getDistinctIds());
         }
+    }
 
-        try {
-            objectMapper.readTree(line2);
-        } catch (IOException ex) {
-            log.warn("An exception occurred during parsing source line in the bulk data file:\n{}\nwith a message:\n{}", line2, ex.getMessage());
-            isOk = false;
+    // failedBefore: documents which have failed in the run which has been resumed
+    private void logBulkResult(BulkIngester bulkIngester, long requestCnt, long failedBefore) {
+        if (bulkIngester.getSucceededActions() != requestCnt) {
+            log.warn("Only {} out of {} requests have been processed in bulk requests ({} failed, {} rejected, {} retried).",
+                    bulkIngester.getSucceededActions(), requestCnt, bulkIngester.getFailedActions(),
+                    bulkIngester.getRejectedActions(), bulkIngester.getRetriedActions());
+        } else {
+            log.info("{} requests have been processed in bulk requests ({} rejected, {} retried).",
+                    requestCnt, bulkIngester.getRejectedActions(), bulkIngester.getRetriedActions());
         }
 
-        if (isOk) {
-            return new IndexRequest(esIndexName)
-                    .id(esId)
-                    .opType(opType)
-                    .source(line2, XContentType.JSON);
-        } else {
-            return null;
+        long failedDocuments = failedBefore + bulkIngester.getFailedActions();
+        if (failedDocuments > failureConfig.getMaxFailedDocuments()) {
+            throw new RuntimeException(failedDocuments + " documents could not be indexed, which is more than "
+                    + failureConfig.getMaxFailedDocuments() + " allowed.");
         }
     }
+
+    private IndexRequest createIndexRequest(ProductDocument document, String indexNameWithDateTime, DocWriteRequest.OpType opType) {
+        return new IndexRequest(indexNameWithDateTime)
+                .id(document.getId())
+                .opType(opType)
+                .source(document.getSource(), XContentType.JSON);
+    }
 }
@@ -0,0 +1,40 @@
+package com.griddynamics.productindexer.repository;
+
+import com.griddynamics.productindexer.config.ShardingConfig;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Number of shards chosen for a new index from its estimated size, stored in the "_meta" of its mapping
+ * next to the {@link IndexGeneration} hashes, so generations can be compared.
+ */
+@Data
+@AllArgsConstructor
+class ShardSizing {
+    static final String META_FIELD = "sizing";
+
+    private long dataSizeBytes;
+    private long estimatedIndexSizeBytes;
+    private long targetShardSizeBytes;
+    private int numberOfShards;
+
+    static ShardSizing estimate(long dataSizeBytes, ShardingConfig config) {
+        long estimatedIndexSizeBytes = (long) (dataSizeBytes * config.getIndexToDataRatio());
+        long targetShardSizeBytes = Math.max(1, config.getTargetShardSize().toBytes());
+        long shards = (estimatedIndexSizeBytes + targetShardSizeBytes - 1) / targetShardSizeBytes;
+        int numberOfShards = (int) Math.max(config.getMinShards(), Math.min(config.getMaxShards(), shards));
+        return new ShardSizing(dataSizeBytes, estimatedIndexSizeBytes, targetShardSizeBytes, Math.max(1, numberOfShards));
+    }
+
+    Map<String, Object> toMeta() {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("dataSizeBytes", dataSizeBytes);
+        meta.put("estimatedIndexSizeBytes", estimatedIndexSizeBytes);
+        meta.put("targetShardSizeBytes", targetShardSizeBytes);
+        meta.put("numberOfShards", numberOfShards);
+        return meta;
+    }
+}
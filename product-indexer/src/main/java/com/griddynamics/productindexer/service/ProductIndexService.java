@@ -2,4 +2,8 @@ package com.griddynamics.productindexer.service;
 
 public interface ProductIndexService {
     void recreateIndex();
+
+    void followChangeFeed();
+
+    void restoreIndex();
 }
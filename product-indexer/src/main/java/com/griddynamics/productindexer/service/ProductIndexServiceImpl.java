@@ -1,17 +1,79 @@
 package com.griddynamics.productindexer.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import com.griddynamics.esingestion.metrics.IndexingReport;
+import com.griddynamics.productindexer.config.IndexerConfig;
 import com.griddynamics.productindexer.repository.ProductIndexRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.io.IOException;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
 @Component
+@Slf4j
 public class ProductIndexServiceImpl implements ProductIndexService {
 
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
     @Autowired
     private ProductIndexRepository productIndexRepository;
+    @Autowired
+    private IndexerConfig indexerConfig;
+    @Autowired
+    private IndexingMetrics metrics;
 
     @Override
     public void recreateIndex() {
-        productIndexRepository.recreateIndex();
+        runWithReport(productIndexRepository::recreateIndex);
+    }
+
+    @Override
+    public void followChangeFeed() {
+        runWithReport(productIndexRepository::followChangeFeed);
+    }
+
+    @Override
+    public void restoreIndex() {
+        runWithReport(productIndexRepository::restoreIndex);
+    }
+
+    private void runWithReport(Runnable indexing) {
+        String outcome = "succeeded";
+        String error = null;
+        try {
+            indexing.run();
+        } catch (RuntimeException ex) {
+            outcome = "failed";
+            error = ex.toString();
+            throw ex;
+        } finally {
+            writeReport(outcome, error);
+        }
+    }
+
+    private void writeReport(String outcome, String error) {
+        IndexingReport report = metrics.report();
+        report.setMode(indexerConfig.getMode().name().toLowerCase());
+        report.setOutcome(outcome);
+        report.setError(error);
+        log.info("Indexing {} in {} ms: {} documents read ({} docs/s, {} bytes/s), {} indexed, {} failed, {} rejected, {} retried, phases {}.",
+                outcome, report.getDurationMillis(), report.getDocumentsRead(), Math.round(report.getDocumentsPerSecond()),
+                Math.round(report.getBytesPerSecond()), report.getItemsSucceeded(), report.getItemsFailed(),
+                report.getItemsRejected(), report.getItemsRetried(), report.getPhaseMillis());
+
+        if (isBlank(indexerConfig.getReportFile())) {
+            return;
+        }
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(indexerConfig.getReportFile()), report);
+            log.info("Indexing report has been written to {}.", indexerConfig.getReportFile());
+        } catch (IOException ex) {
+            log.error("Could not write indexing report to {}", indexerConfig.getReportFile(), ex);
+        }
     }
 }
@@ -0,0 +1,176 @@
+package com.griddynamics.productindexer.ingest;
+
+import com.griddynamics.esingestion.ingest.BulkIngester;
+import com.griddynamics.esingestion.ingest.CheckpointStore;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import com.griddynamics.productindexer.config.ChangeFeedConfig;
+import com.griddynamics.productindexer.model.FeedPosition;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.index.VersionType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ChangeFeedIndexerTest {
+
+    private static final long FIRST_FILE = 1L << 40;
+    private static final long SECOND_FILE = 2L << 40;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path changes;
+    private ChangeFeedConfig config;
+    private BulkIngester bulkIngester;
+    private ChangeFeedIndexer indexer;
+    private Thread feed;
+
+    @Before
+    public void setUp() throws IOException {
+        changes = folder.newFolder("changes").toPath();
+        config = new ChangeFeedConfig();
+        config.setPath(changes.toString());
+        config.setPositionFile(folder.getRoot().toPath().resolve("position.json").toString());
+        config.setPollInterval(Duration.ofMillis(10));
+        bulkIngester = mock(BulkIngester.class);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (feed != null) {
+            indexer.stop(5000);
+            feed.join(5000);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<List<DocWriteRequest<?>>> start() {
+        indexer = new ChangeFeedIndexer(config, "products", bulkIngester, new IndexingMetrics(new SimpleMeterRegistry()),
+                Collections.emptyList());
+        ArgumentCaptor<Consumer<List<DocWriteRequest<?>>>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(bulkIngester).setCompletionListener(listener.capture());
+        verify(bulkIngester).setVersionConflictsExpected(true);
+        feed = new Thread(() -> {
+            try {
+                indexer.run();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        feed.start();
+        return listener.getValue();
+    }
+
+    private List<DocWriteRequest<?>> awaitRequests(int count) {
+        ArgumentCaptor<DocWriteRequest<?>> requests = ArgumentCaptor.forClass(DocWriteRequest.class);
+        verify(bulkIngester, timeout(5000).times(count)).add(requests.capture());
+        return requests.getAllValues();
+    }
+
+    private FeedPosition position() {
+        return new CheckpointStore<>(config.getPositionFile(), FeedPosition.class).load();
+    }
+
+    private void awaitPosition(long offset) throws InterruptedException {
+        for (int i = 0; i < 500 && position().getOffset() != offset; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(offset, position().getOffset());
+    }
+
+    private void write(String file, String... lines) throws IOException {
+        Files.write(changes.resolve(file), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChangesAreVersionedByPosition() throws IOException {
+        String product = "{\"id\":\"1\",\"name\":\"a\"}";
+        String delete = "{\"id\":2,\"_deleted\":true}";
+        write("0001.ndjson", product, delete);
+        start();
+
+        List<DocWriteRequest<?>> requests = awaitRequests(2);
+        IndexRequest indexRequest = (IndexRequest) requests.get(0);
+        assertEquals("\"1\"", indexRequest.id());
+        assertEquals(FIRST_FILE, indexRequest.version());
+        assertEquals(VersionType.EXTERNAL_GTE, indexRequest.versionType());
+        DeleteRequest deleteRequest = (DeleteRequest) requests.get(1);
+        assertEquals("2", deleteRequest.id());
+        assertEquals(FIRST_FILE + product.length() + 1, deleteRequest.version());
+        assertEquals(VersionType.EXTERNAL_GTE, deleteRequest.versionType());
+    }
+
+    @Test
+    public void testPositionWaitsForEarlierChanges() throws IOException, InterruptedException {
+        String first = "{\"id\":\"1\"}";
+        String second = "{\"id\":\"2\"}";
+        write("0001.ndjson", first, "not json", second);
+        Consumer<List<DocWriteRequest<?>>> listener = start();
+
+        List<DocWriteRequest<?>> requests = awaitRequests(2);
+        assertEquals(0, position().getOffset());
+        // Completed out of order, the first change still has to be applied
+        listener.accept(Collections.singletonList(requests.get(1)));
+        Thread.sleep(50);
+        assertEquals(0, position().getOffset());
+        // The line which could not be parsed has been skipped
+        listener.accept(Collections.singletonList(requests.get(0)));
+        awaitPosition(first.length() + "not json".length() + second.length() + 3);
+        assertEquals("0001.ndjson", position().getFile());
+        assertEquals(1, position().getFileNumber());
+    }
+
+    @Test
+    public void testNextFileHasHigherVersions() throws IOException, InterruptedException {
+        String first = "{\"id\":\"1\"}";
+        write("0001.ndjson", first);
+        Consumer<List<DocWriteRequest<?>>> listener = start();
+
+        List<DocWriteRequest<?>> requests = awaitRequests(1);
+        write("0002.ndjson", "{\"id\":\"1\",\"name\":\"b\"}");
+        // The next file is only read once every change of the current one has been applied
+        Thread.sleep(50);
+        verify(bulkIngester, times(1)).add(any());
+        listener.accept(Collections.singletonList(requests.get(0)));
+
+        requests = awaitRequests(2);
+        assertEquals(SECOND_FILE, requests.get(1).version());
+        assertTrue(requests.get(1).version() > requests.get(0).version());
+        assertEquals("0002.ndjson", position().getFile());
+        assertEquals(2, position().getFileNumber());
+        assertEquals(0, position().getOffset());
+    }
+
+    @Test
+    public void testResumesFromSavedPosition() throws IOException {
+        String first = "{\"id\":\"1\"}";
+        write("0001.ndjson", first, "{\"id\":\"2\"}");
+        // Saved before files were numbered
+        new CheckpointStore<>(config.getPositionFile(), FeedPosition.class)
+                .save(new FeedPosition("0001.ndjson", first.length() + 1, 0));
+        start();
+
+        List<DocWriteRequest<?>> requests = awaitRequests(1);
+        assertEquals("\"2\"", requests.get(0).id());
+        assertEquals(FIRST_FILE + first.length() + 1, requests.get(0).version());
+    }
+}
@@ -0,0 +1,159 @@
+package com.griddynamics.productindexer.ingest;
+
+import com.griddynamics.productindexer.model.ProductDocument;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProductDocumentParserTest {
+
+    @Test
+    public void testIdFirst() throws IOException {
+        ProductDocument document = parse("{\"id\":\"1\",\"name\":\"a\"}");
+        assertEquals("\"1\"", document.getId());
+        assertEquals("{\"name\":\"a\"," + suffix("\"\\\"1\\\"\"", document), source(document));
+    }
+
+    @Test
+    public void testIdInTheMiddle() throws IOException {
+        ProductDocument document = parse("{\"name\":\"a\", \"id\" : \"12\" , \"brand\":\"b\"}");
+        assertEquals("\"12\"", document.getId());
+        assertEquals("{\"name\":\"a\",  \"brand\":\"b\"," + suffix("\"\\\"12\\\"\"", document), source(document));
+    }
+
+    @Test
+    public void testIdLast() throws IOException {
+        ProductDocument document = parse("{\"name\":\"a\",\"id\":7}");
+        assertEquals("7", document.getId());
+        assertEquals("{\"name\":\"a\"," + suffix("\"7\"", document), source(document));
+    }
+
+    @Test
+    public void testIdOnly() throws IOException {
+        ProductDocument document = parse(" {\"id\":\"3\"} \n");
+        assertEquals("\"3\"", document.getId());
+        assertEquals("{" + suffix("\"\\\"3\\\"\"", document), source(document));
+    }
+
+    @Test
+    public void testWithoutId() throws IOException {
+        ProductDocument document = parse("{\"name\":\"a\"}");
+        assertNull(document.getId());
+        assertEquals("{\"name\":\"a\",\"contentHash\":\"" + document.getContentHash() + "\"}", source(document));
+    }
+
+    @Test
+    public void testOnlyTopLevelIdIsCut() throws IOException {
+        ProductDocument document = parse("{\"name\":\"\\\"id\\\":5,\",\"parts\":[{\"id\":\"x\"}],\"id\":\"4\"}");
+        assertEquals("\"4\"", document.getId());
+        assertEquals("{\"name\":\"\\\"id\\\":5,\",\"parts\":[{\"id\":\"x\"}]," + suffix("\"\\\"4\\\"\"", document), source(document));
+    }
+
+    @Test
+    public void testLineBreaksAreReplaced() throws IOException {
+        ProductDocument document = parse("{\n\"id\":\"5\",\r\n\"name\":\"a\"\n}");
+        assertEquals("{   \"name\":\"a\" ," + suffix("\"\\\"5\\\"\"", document), source(document));
+    }
+
+    @Test
+    public void testContentHashIgnoresId() throws IOException {
+        String hash = parse("{\"id\":\"1\",\"name\":\"a\"}").getContentHash();
+        assertEquals(hash, parse("{\"id\":\"2\",\"name\":\"a\"}").getContentHash());
+        assertNotEquals(hash, parse("{\"id\":\"1\",\"name\":\"b\"}").getContentHash());
+    }
+
+    @Test
+    public void testSkuFields() throws IOException {
+        ProductDocument document = parse("{\"id\":\"6\",\"skus\":[{\"color\":\"Blue\",\"size\":\"L\",\"price\":1},"
+                + "{\"color\":\"Blue\",\"size\":\"M\",\"tags\":[\"x\"]},{\"color\":\"Red\"},{\"size\":\"L\"}]}");
+        Map<String, Object> source = document.getSourceAsMap();
+        assertEquals(Arrays.asList("Blue", "Red"), source.get(ProductDocument.SKU_COLORS_FIELD));
+        assertEquals(Arrays.asList("L", "M"), source.get(ProductDocument.SKU_SIZES_FIELD));
+        assertEquals(Arrays.asList("Blue|L", "Blue|M"), source.get(ProductDocument.SKU_COLOR_SIZES_FIELD));
+        assertEquals("\"6\"", source.get("sortKey"));
+        assertEquals(4, ((List<?>) source.get("skus")).size());
+        assertFalse(source.containsKey("id"));
+    }
+
+    @Test
+    public void testEmptySkus() throws IOException {
+        Map<String, Object> source = parse("{\"id\":\"6\",\"skus\":[]}").getSourceAsMap();
+        assertEquals(Collections.emptyList(), source.get(ProductDocument.SKU_COLORS_FIELD));
+        assertEquals(Collections.emptyList(), source.get(ProductDocument.SKU_SIZES_FIELD));
+        assertEquals(Collections.emptyList(), source.get(ProductDocument.SKU_COLOR_SIZES_FIELD));
+
+        source = parse("{\"id\":\"6\",\"skus\":null}").getSourceAsMap();
+        assertFalse(source.containsKey(ProductDocument.SKU_COLORS_FIELD));
+    }
+
+    @Test
+    public void testAddField() throws IOException {
+        ProductDocument document = parse("{\"id\":\"1\",\"name\":\"a\"}");
+        String hash = document.getContentHash();
+        document.addField("rank", 3);
+        assertEquals("{\"name\":\"a\"," + suffix("\"\\\"1\\\"\"", document).replace("}", ",\"rank\":3}"), source(document));
+        assertEquals(hash, document.getContentHash());
+        assertEquals(3, document.getSourceAsMap().get("rank"));
+    }
+
+    @Test
+    public void testReadId() throws IOException {
+        assertEquals("\"1\"", ProductDocumentParser.readId(buffer("{\"id\":\"1\",\"name\":\"a\"}")));
+        assertEquals("7", ProductDocumentParser.readId(buffer(" { \"name\" : {\"id\":2} , \"id\" : 7 }")));
+        assertNull(ProductDocumentParser.readId(buffer("{\"name\":\"a\"}")));
+        assertNull(ProductDocumentParser.readId(buffer("{}")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnObject() throws IOException {
+        parse("[{\"id\":\"1\"}]");
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedProduct() throws IOException {
+        parse("{\"id\":\"1\",\"name\"}");
+    }
+
+    @Test(expected = IOException.class)
+    public void testSkusNotAnArray() throws IOException {
+        parse("{\"id\":\"1\",\"skus\":{\"color\":\"Blue\"}}");
+    }
+
+    @Test
+    public void testAnyIdHasSortKey() throws IOException {
+        assertEquals("\"\\\"A-12\\\"\"", sortKey(parse("{\"id\":\"A-12\"}")));
+        assertEquals("\"\\\"007\\\"\"", sortKey(parse("{\"id\":\"007\"}")));
+        assertEquals("\"-1.5\"", sortKey(parse("{\"id\":-1.5}")));
+    }
+
+    // Sort keys are compared as the raw JSON of their source
+    private static String sortKey(ProductDocument document) {
+        String source = source(document);
+        int start = source.indexOf("\"sortKey\":") + "\"sortKey\":".length();
+        return source.substring(start, source.indexOf(",\"contentHash\"", start));
+    }
+
+    private static String suffix(String sortKey, ProductDocument document) {
+        return "\"sortKey\":" + sortKey + ",\"contentHash\":\"" + document.getContentHash() + "\"}";
+    }
+
+    private static ProductDocument parse(String json) throws IOException {
+        return ProductDocumentParser.parse(buffer(json));
+    }
+
+    private static ByteBuffer buffer(String json) {
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String source(ProductDocument document) {
+        return document.getSource().utf8ToString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.griddynamics.productindexer.repository;
+
+import com.griddynamics.productindexer.ingest.ProductDocumentParser;
+import com.griddynamics.productindexer.model.ProductDocument;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class IncrementalUpdateTest {
+
+    private static ProductDocument parse(String json) throws IOException {
+        return ProductDocumentParser.parse(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Map<String, String> existingHashes(String... products) throws IOException {
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        for (String product : products) {
+            ProductDocument document = parse(product);
+            hashes.put(document.getId(), document.getContentHash());
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testOnlyChangedProductsAreWritten() throws IOException {
+        IncrementalUpdate update = new IncrementalUpdate("products",
+                existingHashes("{\"id\":\"1\",\"name\":\"a\"}", "{\"id\":\"2\",\"name\":\"b\"}", "{\"id\":\"3\",\"name\":\"c\"}"));
+
+        assertNull(update.toRequest(parse("{\"name\":\"a\",\"id\":\"1\"}")));
+        IndexRequest updated = update.toRequest(parse("{\"id\":\"2\",\"name\":\"B\"}"));
+        assertEquals("products", updated.index());
+        assertEquals("\"2\"", updated.id());
+        assertTrue(updated.source().utf8ToString().contains("\"name\":\"B\""));
+        IndexRequest created = update.toRequest(parse("{\"id\":\"4\",\"name\":\"d\"}"));
+        assertEquals("\"4\"", created.id());
+
+        List<DeleteRequest> deletes = update.toDeleteRequests();
+        assertEquals(1, deletes.size());
+        assertEquals("products", deletes.get(0).index());
+        assertEquals("\"3\"", deletes.get(0).id());
+        assertEquals(1, update.getCreatedCnt());
+        assertEquals(1, update.getUpdatedCnt());
+        assertEquals(1, update.getUnchangedCnt());
+        assertEquals(1, update.getDeletedCnt());
+    }
+
+    @Test
+    public void testProductsWithoutIdAreSkipped() throws IOException {
+        IncrementalUpdate update = new IncrementalUpdate("products", existingHashes("{\"id\":\"1\",\"name\":\"a\"}"));
+
+        assertNull(update.toRequest(parse("{\"name\":\"a\"}")));
+        assertEquals(0, update.getCreatedCnt() + update.getUpdatedCnt() + update.getUnchangedCnt());
+        assertEquals(1, update.toDeleteRequests().size());
+    }
+
+    @Test
+    public void testIdsKeepTheirJsonType() throws IOException {
+        // A numeric id is another document than the same digits as a string
+        IncrementalUpdate update = new IncrementalUpdate("products", existingHashes("{\"id\":\"7\",\"name\":\"a\"}"));
+
+        IndexRequest created = update.toRequest(parse("{\"id\":7,\"name\":\"a\"}"));
+        assertEquals("7", created.id());
+        assertEquals(1, update.getCreatedCnt());
+        assertEquals("\"7\"", update.toDeleteRequests().get(0).id());
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        IncrementalUpdate update = new IncrementalUpdate("products", new ConcurrentHashMap<>(Collections.emptyMap()));
+
+        assertNotNull(update.toRequest(parse("{\"id\":\"1\"}")));
+        assertTrue(update.toDeleteRequests().isEmpty());
+        assertEquals(1, update.getCreatedCnt());
+        assertEquals(0, update.getDeletedCnt());
+    }
+}
@@ -0,0 +1,56 @@
+package com.griddynamics.productindexer.repository;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IndexGenerationTest {
+
+    private static final IndexGeneration GENERATION = new IndexGeneration("settings", "mappings", "derived", "data");
+
+    @Test
+    public void testMetaRoundTrip() {
+        Map<String, Object> meta = GENERATION.toMeta();
+        assertEquals("derived", meta.get("derivedFieldsHash"));
+        assertEquals(GENERATION, IndexGeneration.fromMeta(meta));
+        assertEquals(new IndexGeneration(null, null, null, null), IndexGeneration.fromMeta(null));
+    }
+
+    @Test
+    public void testSameContent() {
+        assertTrue(GENERATION.hasSameContent(new IndexGeneration("settings", "mappings", "derived", "data")));
+        assertFalse(GENERATION.hasSameContent(new IndexGeneration("settings", "mappings", "derived", "other")));
+        assertFalse(GENERATION.hasSameContent(new IndexGeneration("settings", "mappings", "other", "data")));
+    }
+
+    @Test
+    public void testStructureIncludesDerivedFields() {
+        assertTrue(GENERATION.hasSameStructure(new IndexGeneration("settings", "mappings", "derived", "other")));
+        assertFalse(GENERATION.hasSameStructure(new IndexGeneration("other", "mappings", "derived", "data")));
+        assertFalse(GENERATION.hasSameStructure(new IndexGeneration("settings", "other", "derived", "data")));
+        assertFalse(GENERATION.hasSameStructure(new IndexGeneration("settings", "mappings", "other", "data")));
+    }
+
+    @Test
+    public void testDocumentsCanBeCopiedAcrossSettingsAndMappings() {
+        assertTrue(GENERATION.hasSameDocuments(new IndexGeneration("other", "other", "derived", "data")));
+        assertFalse(GENERATION.hasSameDocuments(new IndexGeneration("settings", "mappings", "other", "data")));
+        assertFalse(GENERATION.hasSameDocuments(new IndexGeneration("settings", "mappings", "derived", "other")));
+    }
+
+    @Test
+    public void testGenerationsBeforeDerivedFieldsHashAreRebuilt() {
+        // Their mappings hash included the enrichers, nothing can be reused
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("settingsHash", "settings");
+        meta.put("mappingsHash", "mappings");
+        meta.put("dataHash", "data");
+        IndexGeneration old = IndexGeneration.fromMeta(meta);
+        assertFalse(GENERATION.hasSameStructure(old));
+        assertFalse(GENERATION.hasSameDocuments(old));
+        assertFalse(GENERATION.hasSameContent(old));
+    }
+}
@@ -0,0 +1,24 @@
+package com.griddynamics.productsearchquery;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Facet counts of a whole index generation, computed by the indexer once the generation is loaded and stored
+ * in the "_meta" of its mappings, so the search service can serve browse requests without aggregations.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetSnapshot {
+    public static final String META_FIELD = "facetSnapshot";
+
+    private long totalHits;
+    // Facets by name, as in the search service response
+    private Map<String, List<Map<String, Object>>> facets;
+    private long createdAt;
+}
@@ -0,0 +1,322 @@
+package com.griddynamics.productsearchquery;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.action.admin.indices.analyze.AnalyzeRequest;
+import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.*;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.bucket.nested.NestedAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.nested.ParsedNested;
+import org.elasticsearch.search.aggregations.bucket.nested.ReverseNested;
+import org.elasticsearch.search.aggregations.bucket.range.ParsedRange;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregator;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.ScoreSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the product search request: the query for a text, sorting and facet aggregations, and reads the facets
+ * from the aggregations of the response.
+ * It is shared by the search service and the indexer, which replays production queries against
+ * a new index before it gets the alias, so both have to send exactly the same requests.
+ * <p>
+ * With flat sku fields, the size and color facets and the size/color matching use the distinct colors, sizes and
+ * color+size pairs which the indexer copies from the skus to the product, instead of nested queries and aggregations.
+ */
+@Slf4j
+public class ProductQueryBuilder {
+
+    public static final String SKUS = "skus";
+    public static final String SKUS_SIZE = SKUS + ".size";
+    public static final String SKUS_SIZE_TEXT = SKUS_SIZE + ".text";
+    public static final String SKUS_SIZE_AGG = "skusSizeAgg";
+    public static final String REVERSE_SIZE_AGG = "reverse_size";
+    public static final String SKUS_COLOR = SKUS + ".color";
+    public static final String SKUS_COLOR_TEXT = SKUS_COLOR + ".text";
+    public static final String SKUS_COLOR_AGG = "skusColorAgg";
+    public static final String REVERSE_COLOR_AGG = "reverse_color";
+    public static final String PRICE_AGG = "priceAgg";
+    public static final String PRICE_FIELD = "price";
+    // Keyword copy of the id written by the indexer which orders products like _id from doc values, see SortKeys of es-ingestion
+    public static final String SORT_KEY_FIELD = "sortKey";
+    public static final String NAME_FIELD = "name";
+    public static final String BRAND_FIELD = "brand";
+    public static final String BRAND_TEXT_FIELD = "brand.text";
+    public static final String NAME_SHINGLES_FIELD = "name.shingles";
+    public static final String BRAND_SHINGLES_FIELD = "brand.shingles";
+    public static final String SKU_COLORS_FIELD = "skuColors";
+    public static final String SKU_COLORS_TEXT = SKU_COLORS_FIELD + ".text";
+    public static final String SKU_SIZES_FIELD = "skuSizes";
+    public static final String SKU_SIZES_TEXT = SKU_SIZES_FIELD + ".text";
+    public static final String SKU_COLOR_SIZES_FIELD = "skuColorSizes";
+    public static final String SKU_COLOR_SIZE_SEPARATOR = "|";
+    // Facet names in the search service response
+    public static final String BRAND_FACET = "brand";
+    public static final String PRICE_FACET = "price";
+    public static final String SKUS_SIZE_FACET = "skus.size";
+    public static final String SKUS_COLOR_FACET = "skus.color";
+    // Fields written by the indexer for its own use, they are not part of the product
+    public static final String[] INTERNAL_FIELDS = {"contentHash", SKU_COLORS_FIELD, SKU_SIZES_FIELD, SKU_COLOR_SIZES_FIELD,
+            "brandKey", "priceTier", "nameLowercase", SORT_KEY_FIELD};
+    // Price facet ranges, the indexer also stores the matching range key of each product as its price tier
+    public static final List<RangeAggregator.Range> PRICE_RANGES = List.of(
+            new RangeAggregator.Range("Cheap", 0.0, 99.99),
+            new RangeAggregator.Range("Average", 100.0, 499.99),
+            new RangeAggregator.Range("Expensive", 500.0, null));
+
+    private static final List<String> SIZES = List.of("xxs", "xs", "s", "m", "l", "xl", "xxl", "xxxl");
+    private static final List<String> COLORS = List.of(
+            "green", "black", "white", "blue",
+            "yellow", "red", "brown", "orange", "grey");
+
+    private final RestHighLevelClient esClient;
+    private final boolean flatSkuFields;
+
+    public ProductQueryBuilder(RestHighLevelClient esClient, boolean flatSkuFields) {
+        this.esClient = esClient;
+        this.flatSkuFields = flatSkuFields;
+    }
+
+    public boolean isFlatSkuFields() {
+        return flatSkuFields;
+    }
+
+    public SearchSourceBuilder getSearchSource(QueryBuilder mainQuery, int size, int from) {
+        return getSearchSource(mainQuery, size, from, true);
+    }
+
+    /**
+     * @param withAggs false when the facets are taken from elsewhere, e.g. a {@link FacetSnapshot}
+     */
+    public SearchSourceBuilder getSearchSource(QueryBuilder mainQuery, int size, int from, boolean withAggs) {
+        // Create search request
+        SearchSourceBuilder ssb = new SearchSourceBuilder()
+                .query(mainQuery)
+                .size(size)
+                .from(from)
+                .fetchSource(null, INTERNAL_FIELDS);
+
+        // Sorting
+        ssb.sort(new ScoreSortBuilder().order(SortOrder.DESC)); // sort by _score DESC
+        ssb.sort(new FieldSortBuilder(SORT_KEY_FIELD).order(SortOrder.DESC)); // tie breaker: sort by sortKey DESC, the id kept in doc values
+        // Aggregation
+        if (withAggs) {
+            List<AggregationBuilder> aggs = createAggs();
+            aggs.forEach(ssb::aggregation);
+        }
+        return ssb;
+    }
+
+    public List<AggregationBuilder> createAggs() {
+        List<AggregationBuilder> result = new ArrayList<>();
+
+        AggregationBuilder brandAgg = AggregationBuilders
+                .terms(BRAND_FIELD)
+                .field(BRAND_FIELD)
+                .order(List.of(BucketOrder.count(false), BucketOrder.key(true)));
+
+        RangeAggregationBuilder priceAgg = AggregationBuilders
+                .range(PRICE_AGG)
+                .field(PRICE_FIELD)
+                .keyed(true);
+        PRICE_RANGES.forEach(priceAgg::addRange);
+
+
+        NestedAggregationBuilder skusColorAgg = AggregationBuilders
+                .nested(SKUS_COLOR_AGG, SKUS)
+                .subAggregation(AggregationBuilders
+                        .terms(SKUS_COLOR)
+                        .field(SKUS_COLOR)
+                        .subAggregation(AggregationBuilders
+                                .reverseNested(REVERSE_COLOR_AGG))
+                        .order(List.of(
+                                BucketOrder.aggregation(REVERSE_COLOR_AGG, false),
+                                BucketOrder.key(true))));
+
+        NestedAggregationBuilder skusSizeAgg = AggregationBuilders
+                .nested(SKUS_SIZE_AGG, SKUS)
+                .subAggregation(AggregationBuilders
+                        .terms(SKUS_SIZE)
+                        .field(SKUS_SIZE)
+                        .subAggregation(AggregationBuilders
+                                .reverseNested(REVERSE_SIZE_AGG))
+                        .order(List.of(
+                                BucketOrder.aggregation(REVERSE_SIZE_AGG, false),
+                                BucketOrder.key(true))));
+
+        // A product holds each of its colors and sizes once, so bucket counts are product counts without reverse_nested
+        AggregationBuilder skuColorsAgg = AggregationBuilders
+                .terms(SKU_COLORS_FIELD)
+                .field(SKU_COLORS_FIELD)
+                .order(List.of(BucketOrder.count(false), BucketOrder.key(true)));
+
+        AggregationBuilder skuSizesAgg = AggregationBuilders
+                .terms(SKU_SIZES_FIELD)
+                .field(SKU_SIZES_FIELD)
+                .order(List.of(BucketOrder.count(false), BucketOrder.key(true)));
+
+        result.add(brandAgg);
+        result.add(priceAgg);
+        result.add(flatSkuFields ? skuColorsAgg : skusColorAgg);
+        result.add(flatSkuFields ? skuSizesAgg : skusSizeAgg);
+
+        return result;
+    }
+
+    /**
+     * @return facets by name, each a list of value and count maps, from the aggregations of {@link #createAggs()}
+     */
+    public Map<String, List<Map<String, Object>>> parseFacets(Aggregations aggregations) {
+        Map<String, List<Map<String, Object>>> facets = new LinkedHashMap<>();
+
+        List<Map<String, Object>> brandAgg = new ArrayList<>();
+        Terms brandTerms = aggregations.get(BRAND_FIELD);
+        brandTerms.getBuckets().forEach(bucket -> brandAgg.add(getFacetValue(bucket.getKeyAsString(), bucket.getDocCount())));
+        facets.put(BRAND_FACET, brandAgg);
+
+        List<Map<String, Object>> priceAgg = new ArrayList<>();
+        ParsedRange parsedRange = aggregations.get(PRICE_AGG);
+        parsedRange.getBuckets().stream()
+                .sorted(Comparator.comparingDouble(bucket -> (Double) bucket.getFrom()))
+                .forEach(bucket -> priceAgg.add(getFacetValue(bucket.getKeyAsString(), bucket.getDocCount())));
+        facets.put(PRICE_FACET, priceAgg);
+
+        List<Map<String, Object>> skusSizeAgg = new ArrayList<>();
+        if (flatSkuFields) {
+            Terms skuSizes = aggregations.get(SKU_SIZES_FIELD);
+            skuSizes.getBuckets().forEach(bucket -> skusSizeAgg.add(getFacetValue(bucket.getKeyAsString(), bucket.getDocCount())));
+        } else {
+            ParsedNested skusSizeOuter = aggregations.get(SKUS_SIZE_AGG);
+            ParsedStringTerms skusSizeNested = skusSizeOuter.getAggregations().get(SKUS_SIZE);
+            skusSizeNested.getBuckets().forEach(bucket -> {
+                ReverseNested reverseSize = bucket.getAggregations().get(REVERSE_SIZE_AGG);
+                skusSizeAgg.add(getFacetValue(bucket.getKeyAsString(), reverseSize.getDocCount()));
+            });
+        }
+        facets.put(SKUS_SIZE_FACET, skusSizeAgg);
+
+        List<Map<String, Object>> skusColorAgg = new ArrayList<>();
+        if (flatSkuFields) {
+            Terms skuColors = aggregations.get(SKU_COLORS_FIELD);
+            skuColors.getBuckets().forEach(bucket -> skusColorAgg.add(getFacetValue(bucket.getKeyAsString(), bucket.getDocCount())));
+        } else {
+            ParsedNested skusColorOuter = aggregations.get(SKUS_COLOR_AGG);
+            ParsedStringTerms skusColorNested = skusColorOuter.getAggregations().get(SKUS_COLOR);
+            skusColorNested.getBuckets().forEach(bucket -> {
+                ReverseNested reverseColor = bucket.getAggregations().get(REVERSE_COLOR_AGG);
+                skusColorAgg.add(getFacetValue(bucket.getKeyAsString(), reverseColor.getDocCount()));
+            });
+        }
+        facets.put(SKUS_COLOR_FACET, skusColorAgg);
+
+        return facets;
+    }
+
+    private static Map<String, Object> getFacetValue(String key, long count) {
+        Map<String, Object> bucketValues = new LinkedHashMap<>();
+        bucketValues.put("value", key);
+        bucketValues.put("count", count);
+        return bucketValues;
+    }
+
+    /**
+     * @param index index (or alias) whose analyzers are used to split the text
+     */
+    public QueryBuilder getQueryByText(String index, String textQuery) {
+        BoolQueryBuilder result = QueryBuilders.boolQuery();
+
+        try {
+
+            AnalyzeRequest shingleAnalyzerRequest = new AnalyzeRequest().text(textQuery).index(index).analyzer("shingle_analyzer");
+            AnalyzeResponse shingleAnalyzerResponse = esClient.indices().analyze(shingleAnalyzerRequest, RequestOptions.DEFAULT);
+            List<String> shingleTokens = shingleAnalyzerResponse.getTokens()
+                    .stream()
+                    .map(AnalyzeResponse.AnalyzeToken::getTerm)
+                    .collect(Collectors.toList());
+
+            AnalyzeRequest request = new AnalyzeRequest().text(textQuery).index(index).analyzer("text_analyzer");
+            AnalyzeResponse analyzeResponse = esClient.indices().analyze(request, RequestOptions.DEFAULT);
+            List<AnalyzeResponse.AnalyzeToken> tokens = analyzeResponse.getTokens();
+            List<String> words = tokens
+                    .stream()
+                    .map(AnalyzeResponse.AnalyzeToken::getTerm)
+                    .collect(Collectors.toList());
+
+            List<QueryBuilder> mainQueryList = new ArrayList<>();
+
+            BoolQueryBuilder sizeColorMatchResult = QueryBuilders.boolQuery();
+            List<String> sizes = new ArrayList<>();
+            List<String> colors = new ArrayList<>();
+
+            for (String token : words) {
+
+                List<QueryBuilder> wordQueries = new ArrayList<>();
+
+                if (SIZES.contains(token)) {
+                    sizeColorMatchResult.must(
+                            QueryBuilders.matchQuery(flatSkuFields ? SKU_SIZES_TEXT : SKUS_SIZE_TEXT, token).boost(2.0f));
+                    sizes.add(token);
+                } else if (COLORS.contains(token)) {
+                    sizeColorMatchResult.must(
+                            QueryBuilders.matchQuery(flatSkuFields ? SKU_COLORS_TEXT : SKUS_COLOR_TEXT, token).boost(3.0f));
+                    colors.add(token);
+                } else {
+                    wordQueries.add(QueryBuilders
+                            .multiMatchQuery(token, NAME_FIELD, BRAND_TEXT_FIELD)
+                            .type(MultiMatchQueryBuilder.Type.CROSS_FIELDS)
+                            .operator(Operator.AND));
+                }
+
+                mainQueryList.addAll(wordQueries);
+            }
+            if (flatSkuFields) {
+                // A color and a size have to belong to the same sku, which the pairs keep
+                for (String color : colors) {
+                    for (String size : sizes) {
+                        sizeColorMatchResult.filter(
+                                QueryBuilders.termQuery(SKU_COLOR_SIZES_FIELD, color + SKU_COLOR_SIZE_SEPARATOR + size));
+                    }
+                }
+                if (sizes.isEmpty() && colors.isEmpty()) {
+                    // Like the nested query without a size or color below, matches the products which have skus with score 1
+                    mainQueryList.add(QueryBuilders.constantScoreQuery(QueryBuilders.boolQuery()
+                            .should(QueryBuilders.existsQuery(SKU_COLORS_FIELD))
+                            .should(QueryBuilders.existsQuery(SKU_SIZES_FIELD))));
+                } else {
+                    mainQueryList.add(sizeColorMatchResult);
+                }
+            } else {
+                mainQueryList.add(QueryBuilders.nestedQuery(SKUS, sizeColorMatchResult, ScoreMode.Avg));
+            }
+
+            mainQueryList.forEach(result::must);
+            shingleTokens.forEach(shingleToken -> result.should(QueryBuilders
+                    .multiMatchQuery(shingleToken, NAME_SHINGLES_FIELD, BRAND_SHINGLES_FIELD)
+                    .type(MultiMatchQueryBuilder.Type.CROSS_FIELDS)
+                    .boost(5.0f)));
+
+        } catch (IOException e) {
+            log.error("An error occurred during analyzing query text: {}", textQuery, e);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,17 @@
+package com.griddynamics.productsearchquery;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A search request of the product search service, as recorded in the query log.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryLogEntry {
+    private String queryText;
+    private Integer size;
+    private Integer page;
+}
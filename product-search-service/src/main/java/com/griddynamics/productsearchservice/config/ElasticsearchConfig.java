@@ -1,5 +1,6 @@
 package com.griddynamics.productsearchservice.config;
 
+import com.griddynamics.productsearchquery.ProductQueryBuilder;
 import lombok.Data;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
@@ -22,6 +23,8 @@ public class ElasticsearchConfig {
     private String esHost = "http://localhost:9200";
     private String user = "";
     private String pass = "";
+    // Facets and size/color matching use the flat sku fields written by the indexer instead of the nested skus
+    private boolean flatSkuFields = false;
 
     @Bean(name = "esClient")
     public RestHighLevelClient getEsClient() {
@@ -38,4 +41,9 @@ public class ElasticsearchConfig {
 
         return new RestHighLevelClient(restClientBuilder);
     }
+
+    @Bean
+    public ProductQueryBuilder getProductQueryBuilder(RestHighLevelClient esClient) {
+        return new ProductQueryBuilder(esClient, flatSkuFields);
+    }
 }
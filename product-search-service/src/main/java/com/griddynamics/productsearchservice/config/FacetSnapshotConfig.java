@@ -0,0 +1,17 @@
+package com.griddynamics.productsearchservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.search.service.facet-snapshot")
+@Data
+public class FacetSnapshotConfig {
+    // Browse requests take their facets from the snapshot stored by the indexer instead of running the aggregations
+    private boolean enabled = true;
+    // How often the index behind the alias is checked for a new snapshot
+    private Duration refreshInterval = Duration.ofSeconds(10);
+}
@@ -0,0 +1,21 @@
+package com.griddynamics.productsearchservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties("com.griddynamics.product.search.service.query-log")
+@Data
+public class QueryLogConfig {
+    // NDJSON file the served queries are appended to, the indexer replays them to warm up new indices.
+    // Has to be a path the indexer reads as well, e.g. on a shared volume. Blank disables the log
+    private String file = "";
+    // Share of the queries which are logged, from 0 to 1
+    private double sampleRate = 0.05;
+    // Queries waiting to be written, more are dropped so a slow disk never slows down the searches
+    private int queueCapacity = 1000;
+    // The file is rotated to <file>.1 when it reaches this size, the previous rotated file is deleted
+    private DataSize maxFileSize = DataSize.ofMegabytes(50);
+}
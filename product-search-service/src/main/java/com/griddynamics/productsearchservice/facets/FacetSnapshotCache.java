@@ -0,0 +1,108 @@
+package com.griddynamics.productsearchservice.facets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.productsearchquery.FacetSnapshot;
+import com.griddynamics.productsearchservice.config.FacetSnapshotConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.client.indices.GetMappingsResponse;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the facet snapshot of the index behind the alias in memory. The mappings of the alias are read again
+ * every refresh interval, so a snapshot of a new index or a newer one of the same index is picked up
+ * soon after the alias has moved or the index has been updated.
+ */
+@Component
+@Lazy(false) // The snapshot is loaded before the first browse request
+@Slf4j
+public class FacetSnapshotCache {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String META_FIELD = "_meta";
+
+    @Autowired
+    private RestHighLevelClient esClient;
+    @Autowired
+    private FacetSnapshotConfig config;
+
+    @Value("${com.griddynamics.product.search.service.index}")
+    private String aliasName;
+
+    private ScheduledExecutorService scheduler;
+    private volatile String index;
+    private volatile FacetSnapshot snapshot;
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "facet-snapshot-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getRefreshInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return snapshot of the index behind the alias, or null if it has none or it is not known yet
+     */
+    public FacetSnapshot get() {
+        return snapshot;
+    }
+
+    void refresh() {
+        try {
+            GetMappingsResponse response = esClient.indices().getMapping(new GetMappingsRequest().indices(aliasName), RequestOptions.DEFAULT);
+            if (response.mappings().isEmpty()) {
+                return;
+            }
+            Map.Entry<String, MappingMetaData> mapping = response.mappings().entrySet().iterator().next();
+            FacetSnapshot current = readSnapshot(mapping.getValue());
+            if (!mapping.getKey().equals(index) || !sameCreation(current, snapshot)) {
+                log.info("Facet snapshot of index {} has been {}.", mapping.getKey(), current != null ? "loaded" : "not found");
+                index = mapping.getKey();
+                snapshot = current;
+            }
+        } catch (IOException | RuntimeException ex) {
+            // The snapshot loaded before stays in use, it is only as old as the index which still has the alias
+            log.warn("Facet snapshot of alias {} can not be refreshed: {}", aliasName, ex.toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FacetSnapshot readSnapshot(MappingMetaData mapping) {
+        Map<String, Object> meta = (Map<String, Object>) mapping.getSourceAsMap().get(META_FIELD);
+        Object snapshot = meta != null ? meta.get(FacetSnapshot.META_FIELD) : null;
+        return snapshot != null ? objectMapper.convertValue(snapshot, FacetSnapshot.class) : null;
+    }
+
+    private static boolean sameCreation(FacetSnapshot current, FacetSnapshot loaded) {
+        return Objects.equals(current != null ? current.getCreatedAt() : null, loaded != null ? loaded.getCreatedAt() : null);
+    }
+}
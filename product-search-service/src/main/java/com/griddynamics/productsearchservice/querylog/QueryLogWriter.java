@@ -0,0 +1,156 @@
+package com.griddynamics.productsearchservice.querylog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.griddynamics.productsearchquery.QueryLogEntry;
+import com.griddynamics.productsearchservice.config.QueryLogConfig;
+import com.griddynamics.productsearchservice.model.ProductServiceRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Appends a sample of the served queries to the query log, one JSON object per line.
+ * Searches only put their entry into a bounded queue, a background thread writes it. When the queue is full
+ * the entry is dropped, so logging never slows down or fails a search. The file is rotated by size,
+ * the indexer reads the current and the rotated file. Write errors are only logged and the query log gets disabled.
+ */
+@Component
+@Slf4j
+public class QueryLogWriter {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // The indexer reads the rotated file under the same name
+    private static final String ROTATED_SUFFIX = ".1";
+
+    @Autowired
+    private QueryLogConfig config;
+
+    private volatile BlockingQueue<QueryLogEntry> queue;
+    private Thread thread;
+    private volatile boolean stopped;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Path path;
+    private OutputStream output;
+    private long fileSize;
+
+    @PostConstruct
+    public void start() {
+        if (isBlank(config.getFile())) {
+            log.info("Query log is disabled, new indices will be warmed up with the facets only.");
+            return;
+        }
+        path = Paths.get(config.getFile());
+        queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+        thread = new Thread(this::run, "query-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Queries are logged to {} with a sample rate of {}.", path.toAbsolutePath(), config.getSampleRate());
+    }
+
+    public void log(ProductServiceRequest request) {
+        if (queue == null || ThreadLocalRandom.current().nextDouble() >= config.getSampleRate()) {
+            return;
+        }
+        QueryLogEntry entry = new QueryLogEntry(request.getQueryText(), request.getSize(), request.getPage());
+        if (!queue.offer(entry) && dropped.getAndIncrement() == 0) {
+            log.warn("Query log queue is full, queries are dropped until the writer catches up.");
+        }
+    }
+
+    public long getDroppedEntries() {
+        return dropped.get();
+    }
+
+    // Not interrupted when stopped, as an interrupt would close the file channel in the middle of a write
+    private void run() {
+        BlockingQueue<QueryLogEntry> entriesToWrite = queue;
+        List<QueryLogEntry> entries = new ArrayList<>();
+        try {
+            while (!stopped || !entriesToWrite.isEmpty()) {
+                QueryLogEntry first = entriesToWrite.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    entries.add(first);
+                    entriesToWrite.drainTo(entries);
+                    write(entries);
+                    entries.clear();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            log.error("Query log {} can not be written, it is disabled: {}", path, ex.getMessage());
+            queue = null;
+        } finally {
+            closeOutput();
+        }
+    }
+
+    // Writes the entries and flushes them at once, a burst of queries costs a single flush
+    private void write(List<QueryLogEntry> entries) throws IOException {
+        for (QueryLogEntry entry : entries) {
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            if (output != null && fileSize + line.length > config.getMaxFileSize().toBytes()) {
+                rotate();
+            }
+            if (output == null) {
+                output = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                fileSize = Files.size(path);
+            }
+            output.write(line);
+            fileSize += line.length;
+        }
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeOutput();
+        Files.move(path, Paths.get(path + ROTATED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        log.info("Query log {} has been rotated.", path);
+    }
+
+    private void closeOutput() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException ex) {
+            log.warn("Query log {} can not be closed: {}", path, ex.getMessage());
+        }
+        output = null;
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (thread != null) {
+            stopped = true;
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (dropped.get() > 0) {
+            log.info("{} queries have been dropped from the query log because its queue was full.", dropped.get());
+        }
+    }
+}
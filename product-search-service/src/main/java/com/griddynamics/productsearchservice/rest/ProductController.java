@@ -22,4 +22,11 @@ public class ProductController {
     public ProductServiceResponse getSearchServiceResponse(@RequestBody ProductServiceRequest request) {
         return productService.getServiceResponse(request);
     }
+
+    @PostMapping(value = "/browse",
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ProductServiceResponse getBrowseServiceResponse(@RequestBody ProductServiceRequest request) {
+        return productService.getBrowseResponse(request);
+    }
 }
@@ -5,4 +5,5 @@ import com.griddynamics.productsearchservice.model.ProductServiceResponse;
 
 public interface ProductSearchService {
     ProductServiceResponse getServiceResponse(ProductServiceRequest request);
+    ProductServiceResponse getBrowseResponse(ProductServiceRequest request);
 }
@@ -2,6 +2,7 @@ package com.griddynamics.productsearchservice.service;
 
 import com.griddynamics.productsearchservice.model.ProductServiceRequest;
 import com.griddynamics.productsearchservice.model.ProductServiceResponse;
+import com.griddynamics.productsearchservice.querylog.QueryLogWriter;
 import com.griddynamics.productsearchservice.repository.ProductSearchRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -13,6 +14,8 @@ public class ProductSearchServiceImpl implements ProductSearchService {
 
     @Autowired
     private ProductSearchRepository productRepository;
+    @Autowired
+    private QueryLogWriter queryLogWriter;
 
     @Override
     public ProductServiceResponse getServiceResponse(ProductServiceRequest request) {
@@ -26,8 +29,21 @@ public class ProductSearchServiceImpl implements ProductSearchService {
                 request.setPage(0);
             }
         }
+        queryLogWriter.log(request);
         return productRepository.getProductsByQuery(request);
     }
 
+    @Override
+    public ProductServiceResponse getBrowseResponse(ProductServiceRequest request) {
+        if (request.getSize() == null) {
+            request.setSize(10);
+        }
+        if (request.getPage() == null) {
+            request.setPage(0);
+        }
+        // Browse requests have no text, there is nothing to log for replay
+        return productRepository.getAllProducts(request);
+    }
+
 
 }
@@ -0,0 +1,10 @@
+package com.griddynamics.productsearchservice;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the same requests with the facets and the sku filters on the flat sku fields instead of the nested skus.
+ */
+@TestPropertySource(properties = { "com.griddynamics.product.search.service.flatSkuFields=true" })
+public class ProductServiceFlatSkuFieldsIntegrationTest extends ProductServiceIntegrationTest {
+}
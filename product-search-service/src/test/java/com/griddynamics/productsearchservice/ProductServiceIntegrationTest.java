@@ -1,16 +1,21 @@
 package com.griddynamics.productsearchservice;
 
+import com.griddynamics.productsearchservice.facets.FacetSnapshotCache;
 import com.griddynamics.productsearchservice.service.ProductSearchService;
 import org.hamcrest.collection.IsMapContaining;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertNotNull;
 
 public class ProductServiceIntegrationTest extends BaseTest {
 
     private final APIClient client = new APIClient();
 
+    @Autowired
+    private FacetSnapshotCache facetSnapshotCache;
+
     @Test
     public void testEmptyResponse() {
         client
@@ -224,4 +229,73 @@ public class ProductServiceIntegrationTest extends BaseTest {
                 .body("products[1].id", is("5"));
     }
 
+    @Test
+    public void testBrowse() throws InterruptedException {
+        // The snapshot is loaded in the background at startup
+        for (int i = 0; i < 100 && facetSnapshotCache.get() == null; i++) {
+            Thread.sleep(100);
+        }
+        assertNotNull("Facet snapshot of the test index", facetSnapshotCache.get());
+
+        client
+                .productRequest()
+                .body("{}")
+                .post("/browse")
+                .then()
+                .statusCode(200)
+                .body("totalHits", is(8))
+                .body("products", hasSize(8))
+                .body("products[0].id", is("8"))
+                .body("products[7].id", is("1"))
+                .body("facets[\"brand\"]", hasSize(2))
+                .body("facets.brand[0].value", is("Calvin Klein"))
+                .body("facets.brand[0].count", is(4))
+                .body("facets.brand[1].value", is("Levi's"))
+                .body("facets.brand[1].count", is(4))
+                .body("facets[\"price\"]", hasSize(3))
+                .body("facets.price[0].value", is("Cheap"))
+                .body("facets.price[0].count", is(2))
+                .body("facets.price[1].value", is("Average"))
+                .body("facets.price[1].count", is(6))
+                .body("facets.price[2].value", is("Expensive"))
+                .body("facets.price[2].count", is(0))
+                .body("facets[\"skus.color\"]", hasSize(4))
+                .body("facets.\"skus.color\"[0].value", is("Blue"))
+                .body("facets.\"skus.color\"[0].count", is(8))
+                .body("facets.\"skus.color\"[1].value", is("Black"))
+                .body("facets.\"skus.color\"[1].count", is(7))
+                .body("facets.\"skus.color\"[2].value", is("Red"))
+                .body("facets.\"skus.color\"[2].count", is(1))
+                .body("facets.\"skus.color\"[3].value", is("White"))
+                .body("facets.\"skus.color\"[3].count", is(1))
+                .body("facets[\"skus.size\"]", hasSize(6))
+                .body("facets.\"skus.size\"[0].value", is("L"))
+                .body("facets.\"skus.size\"[0].count", is(8))
+                .body("facets.\"skus.size\"[5].value", is("XS"))
+                .body("facets.\"skus.size\"[5].count", is(2));
+
+        // Only the page is searched, the total and the facets are those of the snapshot
+        client
+                .productRequest()
+                .body("{\"size\":2, \"page\":1}")
+                .post("/browse")
+                .then()
+                .statusCode(200)
+                .body("totalHits", is(8))
+                .body("products", hasSize(2))
+                .body("products[0].id", is("6"))
+                .body("products[1].id", is("5"))
+                .body("facets.brand[0].count", is(4))
+                .body("facets.\"skus.color\"[0].count", is(8));
+
+        client
+                .productRequest()
+                .body("{\"size\":10, \"page\":1}")
+                .post("/browse")
+                .then()
+                .statusCode(200)
+                .body("totalHits", is(8))
+                .body("products", hasSize(0));
+    }
+
 }
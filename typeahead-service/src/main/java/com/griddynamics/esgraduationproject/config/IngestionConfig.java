@@ -0,0 +1,40 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.config.PipelineConfig;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class IngestionConfig {
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.bulk")
+    public BulkConfig bulkConfig() {
+        return new BulkConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.failures")
+    public FailureHandlingConfig failureHandlingConfig() {
+        return new FailureHandlingConfig();
+    }
+
+    @Bean
+    @ConfigurationProperties("com.griddynamics.es.graduation.project.pipeline")
+    public PipelineConfig pipelineConfig() {
+        return new PipelineConfig();
+    }
+
+    // The service has no metrics endpoint, the meters only feed the log summary unless a registry is configured
+    @Bean
+    public IndexingMetrics indexingMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new IndexingMetrics(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+}
@@ -0,0 +1,29 @@
+package com.griddynamics.esgraduationproject.config;
+
+import com.griddynamics.appstartup.LazyInitializationPostProcessor;
+import com.griddynamics.appstartup.StartupProperties;
+import com.griddynamics.appstartup.StartupReporter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StartupConfig {
+    private static final String PREFIX = "com.griddynamics.es.graduation.project.startup";
+
+    @Bean
+    @ConfigurationProperties(PREFIX)
+    public StartupProperties startupProperties() {
+        return new StartupProperties();
+    }
+
+    @Bean
+    public StartupReporter startupReporter(StartupProperties startupProperties) {
+        return new StartupReporter("typeahead-service", startupProperties);
+    }
+
+    @Bean
+    public static LazyInitializationPostProcessor lazyInitializationPostProcessor() {
+        return new LazyInitializationPostProcessor(PREFIX);
+    }
+}
@@ -7,6 +7,8 @@ public class TypeaheadServiceRequest {
     private Integer size;
     private String textQuery;
     private boolean considerItemCountInSorting;
+    // Typeaheads are sorted in the order of the index, without scores and facets, and totalHits is only a lower bound
+    private boolean fast;
 
     public boolean isGetAllRequest() {
         return textQuery == null;
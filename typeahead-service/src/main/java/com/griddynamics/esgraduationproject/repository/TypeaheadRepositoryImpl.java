@@ -1,31 +1,26 @@
 package com.griddynamics.esgraduationproject.repository;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceRequest;
 import com.griddynamics.esgraduationproject.model.TypeaheadServiceResponse;
+import com.griddynamics.esingestion.config.BulkConfig;
+import com.griddynamics.esingestion.config.FailureHandlingConfig;
+import com.griddynamics.esingestion.config.PipelineConfig;
+import com.griddynamics.esingestion.index.IndexAliasManager;
+import com.griddynamics.esingestion.ingest.BulkActionParser;
+import com.griddynamics.esingestion.ingest.BulkActionSplitter;
+import com.griddynamics.esingestion.ingest.BulkIngester;
+import com.griddynamics.esingestion.ingest.BulkPassthroughLoader;
+import com.griddynamics.esingestion.ingest.ByteWindows;
+import com.griddynamics.esingestion.ingest.IndexingPipeline;
+import com.griddynamics.esingestion.ingest.SortKeys;
+import com.griddynamics.esingestion.metrics.IndexingMetrics;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.action.DocWriteRequest;
-import org.elasticsearch.action.IndicesRequest;
-import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
-import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
-import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.support.master.AcknowledgedResponse;
-import org.elasticsearch.client.IndicesClient;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.client.indices.CreateIndexRequest;
-import org.elasticsearch.client.indices.CreateIndexResponse;
-import org.elasticsearch.client.indices.GetIndexRequest;
-import org.elasticsearch.cluster.metadata.AliasMetaData;
-import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.DisMaxQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -47,16 +42,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.apache.commons.lang3.StringUtils.isNotEmpty;
-import static org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
-
 @Component
 @Slf4j
 public class TypeaheadRepositoryImpl implements TypeaheadRepository {
@@ -66,12 +55,19 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
     private static final String NAME_FIELD = "name";
     private static final String ITEM_COUNT_FIELD = "itemCount";
     private static final String RANK_FIELD = "rank";
-    private static final String ID_FIELD = "_id";
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int MAX_ALLOWED_INDICES_NUMBER = 5;
 
     @Autowired
     private RestHighLevelClient esClient;
+    @Autowired
+    private BulkConfig bulkConfig;
+    @Autowired
+    private FailureHandlingConfig failureConfig;
+    @Autowired
+    private PipelineConfig pipelineConfig;
+    @Autowired
+    private IndexingMetrics metrics;
 
     @Value("${com.griddynamics.es.graduation.project.index}")
     private String aliasName;
@@ -88,6 +84,13 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
     float fuzzyTwoBoost;
     @Value("${com.griddynamics.es.graduation.project.request.prefixQueryBoost:0.9}")
     float prefixQueryBoost;
+    // Matches are counted up to this number in the fast mode, so that the search can stop early
+    @Value("${com.griddynamics.es.graduation.project.request.fast.trackTotalHitsUpTo:1000}")
+    int fastTrackTotalHitsUpTo;
+
+    // The bulk data file is already in the _bulk format, so it can be sent as it is
+    @Value("${com.griddynamics.es.graduation.project.bulkPassthrough:true}")
+    private boolean bulkPassthrough;
 
     // Mappings, settings and bulk data files
     @Value("${com.griddynamics.es.graduation.project.files.mappings:classpath:elastic/typeaheads/mappings.json}")
@@ -113,10 +116,23 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
         // Create search request
         SearchSourceBuilder ssb = new SearchSourceBuilder()
                 .query(mainQuery)
-                .size(request.getSize());
+                .size(request.getSize())
+                .fetchSource(null, SortKeys.SORT_KEY_FIELD);
 
         // Add sorting and aggregation if necessary
-        if (!request.isGetAllRequest()) {
+        if (!request.isGetAllRequest() && request.isFast()) {
+            // Sorting by rank is the index sorting, so each segment stops after the first hits.
+            // Sorting by itemCount is not, but both skip the scores and the aggregations over all the matches
+            if (request.isConsiderItemCountInSorting()) {
+                ssb.sort(new FieldSortBuilder(ITEM_COUNT_FIELD).order(SortOrder.DESC)); // sort by itemCount DESC
+                ssb.sort(new FieldSortBuilder(RANK_FIELD).order(SortOrder.DESC)); // sort by rank DESC
+            } else {
+                ssb.sort(new FieldSortBuilder(RANK_FIELD).order(SortOrder.DESC)); // sort by rank DESC
+                ssb.sort(new FieldSortBuilder(ITEM_COUNT_FIELD).order(SortOrder.DESC)); // sort by itemCount DESC
+            }
+            ssb.sort(new FieldSortBuilder(SortKeys.SORT_KEY_FIELD).order(SortOrder.DESC)); // tie breaker: sort by sortKey DESC, the id kept in doc values
+            ssb.trackTotalHitsUpTo(fastTrackTotalHitsUpTo);
+        } else if (!request.isGetAllRequest()) {
             // Sorting
             ssb.sort(new ScoreSortBuilder().order(SortOrder.DESC)); // sort by _score DESC
             if (request.isConsiderItemCountInSorting()) {
@@ -124,7 +140,7 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
             } else {
                 ssb.sort(new FieldSortBuilder(RANK_FIELD).order(SortOrder.DESC)); // sort by rank DESC
             }
-            ssb.sort(new FieldSortBuilder(ID_FIELD).order(SortOrder.DESC)); // tie breaker: sort by _id DESC
+            ssb.sort(new FieldSortBuilder(SortKeys.SORT_KEY_FIELD).order(SortOrder.DESC)); // tie breaker: sort by sortKey DESC, the id kept in doc values
             // Aggregation
             List<AggregationBuilder> aggs = createAggs();
             aggs.forEach(ssb::aggregation);
@@ -135,7 +151,7 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
         try {
             SearchResponse searchResponse = esClient.search(searchRequest, RequestOptions.DEFAULT);
             // Build service response
-            return getServiceResponse(searchResponse, !request.isGetAllRequest());
+            return getServiceResponse(searchResponse, !request.isGetAllRequest() && !request.isFast());
         } catch (IOException ex) {
             log.error(ex.getMessage(), ex);
             return new TypeaheadServiceResponse();
@@ -258,106 +274,15 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
         String settings = getStrFromResource(typeaheadsSettingsFile);
         String mappings = getStrFromResource(typeaheadsMappingsFile);
 
-        String indexNameWithDateTime = this.aliasName + "_" + getCurrentDateTime();
-        createIndex(indexNameWithDateTime, settings, mappings);
-
-        processBulkInsertData(typeaheadsBulkInsertDataFile, indexNameWithDateTime);
+        IndexAliasManager aliasManager = new IndexAliasManager(esClient, aliasName);
+        String indexNameWithDateTime = aliasManager.newIndexName();
+        metrics.setIndex(indexNameWithDateTime);
+        metrics.timePhase(IndexingMetrics.PHASE_CREATE_INDEX, () -> aliasManager.createIndex(indexNameWithDateTime, settings, mappings));
 
-        IndicesAliasesRequest request = new IndicesAliasesRequest();
-        AliasActions aliasAction =
-                new AliasActions(AliasActions.Type.ADD)
-                        .index(indexNameWithDateTime)
-                        .alias(aliasName);
-        request.addAliasAction(aliasAction);
-        try {
-            removeAliasFromRemainingIndices();
-            esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        metrics.timePhase(IndexingMetrics.PHASE_LOAD, () -> processBulkInsertData(typeaheadsBulkInsertDataFile, indexNameWithDateTime));
 
-        deleteAllExceptLastFiveIndices();
-    }
-
-    private void removeAliasFromRemainingIndices() throws IOException {
-        IndicesAliasesRequest request = new IndicesAliasesRequest();
-        Set<String> indicesFromAliasName = getIndicesFromAliasName(aliasName);
-        if (indicesFromAliasName.size() > 0) {
-            indicesFromAliasName.forEach(index -> {
-                        AliasActions aliasAction =
-                                new AliasActions(AliasActions.Type.REMOVE)
-                                        .index(index)
-                                        .alias(aliasName);
-                        request.addAliasAction(aliasAction);
-                    }
-            );
-            esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
-        }
-    }
-
-    private void deleteAllExceptLastFiveIndices() {
-        try {
-            Set<String> indicesFromAliasName = getIndicesFromPattern(aliasName + "_*");
-            List<String> collect = new ArrayList<>(indicesFromAliasName);
-            collect.sort(Comparator.comparing(String::toString));
-            if (collect.size() > 5) {
-                List<String> indicesSorted = collect.subList(0, collect.size() - 5);
-                indicesSorted.forEach(indexFromSet -> {
-                    DeleteIndexRequest deleteIndexRequest = new DeleteIndexRequest(indexFromSet);
-
-                    try {
-                        esClient.indices().delete(deleteIndexRequest, RequestOptions.DEFAULT);
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                });
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    private static String getCurrentDateTime() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-        return dateFormat.format(new Date());
-    }
-
-    private Set<String> getIndicesFromAliasName(String aliasName) throws IOException {
-        IndicesClient iac = esClient.indices();
-
-        Map<String, Set<AliasMetaData>> map = iac.getAlias(new GetAliasesRequest(aliasName),
-                RequestOptions.DEFAULT).getAliases();
-
-        return map.keySet();
-    }
-
-    private Set<String> getIndicesFromPattern(String pattern) throws IOException {
-        IndicesClient iac = esClient.indices();
-
-        GetIndexRequest getIndexRequest = new GetIndexRequest(pattern);
-        return Arrays.stream(iac.get(getIndexRequest, RequestOptions.DEFAULT).getIndices()).collect(Collectors.toSet());
-
-    }
-
-    private void createIndex(String indexName, String settings, String mappings) {
-        CreateIndexRequest createIndexRequest = new CreateIndexRequest(indexName)
-                .mapping(mappings, XContentType.JSON)
-                .settings(settings, XContentType.JSON);
-
-        CreateIndexResponse createIndexResponse;
-        try {
-            createIndexResponse = esClient.indices().create(createIndexRequest, RequestOptions.DEFAULT);
-        } catch (IOException ex) {
-            throw new RuntimeException("An error occurred during creating ES index.", ex);
-        }
-
-        if (!createIndexResponse.isAcknowledged()) {
-            throw new RuntimeException("Creating index not acknowledged for indexName: " + indexName);
-        } else {
-            log.info("Index {} has been created.", indexName);
-        }
+        metrics.timePhase(IndexingMetrics.PHASE_ALIAS_SWAP, () -> aliasManager.moveAliasTo(indexNameWithDateTime));
+        metrics.timePhase(IndexingMetrics.PHASE_CLEANUP, () -> aliasManager.deleteAllExceptLast(MAX_ALLOWED_INDICES_NUMBER));
     }
 
     private static String getStrFromResource(Resource resource) {
@@ -372,32 +297,22 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
     }
 
     private void processBulkInsertData(Resource bulkInsertDataFile, String indexNameWithDateTime) {
-        int requestCnt = 0;
-        try {
-            BulkRequest bulkRequest = new BulkRequest();
-            BufferedReader br = new BufferedReader(new InputStreamReader(bulkInsertDataFile.getInputStream()));
-
-            while (br.ready()) {
-                String line1 = br.readLine(); // action_and_metadata
-                if (isNotEmpty(line1) && br.ready()) {
-                    requestCnt++;
-                    String line2 = br.readLine();
-                    IndexRequest indexRequest = createIndexRequestFromBulkData(line1, line2, indexNameWithDateTime);
-                    if (indexRequest != null) {
-                        bulkRequest.add(indexRequest);
-                    }
-                }
-            }
-
-            BulkResponse bulkResponse = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-            if (bulkResponse.getItems().length != requestCnt) {
-                log.warn("Only {} out of {} requests have been processed in a bulk request.", bulkResponse.getItems().length, requestCnt);
+        if (bulkPassthrough) {
+            passBulkInsertDataThrough(bulkInsertDataFile, indexNameWithDateTime);
+            return;
+        }
+        try (BulkActionSplitter splitter = new BulkActionSplitter(ByteWindows.open(bulkInsertDataFile, 0));
+             BulkIngester bulkIngester = new BulkIngester(esClient, bulkConfig, failureConfig, metrics)) {
+            long requestCnt = new IndexingPipeline<>(pipelineConfig, bulkIngester, metrics,
+                    pair -> BulkActionParser.parse(pair).withSortKey())
+                    .run(splitter, action -> action.toIndexRequest(indexNameWithDateTime));
+            bulkIngester.close();
+
+            if (bulkIngester.getSucceededActions() != requestCnt) {
+                log.warn("Only {} out of {} requests have been processed in bulk requests ({} failed).",
+                        bulkIngester.getSucceededActions(), requestCnt, bulkIngester.getFailedActions());
             } else {
-                log.info("{} requests have been processed in a bulk request.", bulkResponse.getItems().length);
-            }
-
-            if (bulkResponse.hasFailures()) {
-                log.warn("Bulk data processing has failures:\n{}", bulkResponse.buildFailureMessage());
+                log.info("{} requests have been processed in bulk requests.", requestCnt);
             }
         } catch (IOException ex) {
             log.error("An exception occurred during bulk data processing", ex);
@@ -405,40 +320,21 @@ public class TypeaheadRepositoryImpl implements TypeaheadRepository {
         }
     }
 
-    private IndexRequest createIndexRequestFromBulkData(String line1, String line2, String indexNameWithDateTime) {
-        DocWriteRequest.OpType opType = null;
-        String esIndexName = null;
-        String esId = null;
-        boolean isOk = true;
-
-        try {
-            String esOpType = objectMapper.readTree(line1).fieldNames().next();
-            opType = DocWriteRequest.OpType.fromString(esOpType);
-
-            JsonNode indexJsonNode = objectMapper.readTree(line1).iterator().next().get("_index");
-            esIndexName = (indexJsonNode != null ? indexJsonNode.textValue() : indexNameWithDateTime);
-
-            JsonNode idJsonNode = objectMapper.readTree(line1).iterator().next().get("_id");
-            esId = (idJsonNode != null ? idJsonNode.textValue() : null);
-        } catch (IOException | IllegalArgumentException ex) {
-            log.warn("An exception occurred during parsing action_and_metadata line in the bulk data file:\n{}\nwith a message:\n{}", line1, ex.getMessage());
-            isOk = false;
-        }
+    private void passBulkInsertDataThrough(Resource bulkInsertDataFile, String indexNameWithDateTime) {
+        try (BulkActionSplitter splitter = new BulkActionSplitter(ByteWindows.open(bulkInsertDataFile, 0));
+             BulkPassthroughLoader loader = new BulkPassthroughLoader(esClient, indexNameWithDateTime, bulkConfig, failureConfig, metrics)) {
+            loader.setAddSortKeys(true);
+            long requestCnt = loader.load(splitter);
 
-        try {
-            objectMapper.readTree(line2);
+            if (loader.getSucceededActions() != requestCnt) {
+                log.warn("Only {} out of {} actions have been indexed by passing the bulk data through ({} failed, {} retried).",
+                        loader.getSucceededActions(), requestCnt, loader.getFailedActions(), loader.getRetriedActions());
+            } else {
+                log.info("{} actions have been indexed by passing the bulk data through.", requestCnt);
+            }
         } catch (IOException ex) {
-            log.warn("An exception occurred during parsing source line in the bulk data file:\n{}\nwith a message:\n{}", line2, ex.getMessage());
-            isOk = false;
-        }
-
-        if (isOk) {
-            return new IndexRequest(esIndexName)
-                    .id(esId)
-                    .opType(opType)
-                    .source(line2, XContentType.JSON);
-        } else {
-            return null;
+            log.error("An exception occurred during bulk data processing", ex);
+            throw new RuntimeException(ex);
         }
     }
 }